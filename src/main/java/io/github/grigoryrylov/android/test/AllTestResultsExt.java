@@ -1,17 +1,49 @@
 package io.github.grigoryrylov.android.test;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Created by grishberg on 08.04.18.
  */
 public class AllTestResultsExt extends CompositeTestResultsExt {
     private final Map<String, PackageTestResultsExt> packages = new TreeMap<>();
+    private final SymbolTable symbols;
+    private final TextArena textArena = new TextArena();
+    private final FailureTextStore failureTexts = new FailureTextStore(textArena);
+    private final boolean aggregationDeferred;
+    private File outputDir;
 
     public AllTestResultsExt() {
+        this(false);
+    }
+
+    /**
+     * @param aggregationDeferred if {@code true}, adding tests, failures and ignored tests only
+     *                            records them in their class; counts, durations, failures and the
+     *                            results per device and variant are left empty until
+     *                            {@link #aggregate} computes them.
+     */
+    AllTestResultsExt(boolean aggregationDeferred) {
+        this(aggregationDeferred, new SymbolTable());
+    }
+
+    /**
+     * @param symbols table of the names stored by the test results, may be shared with the
+     *                {@link SuiteResults} merged into this model.
+     */
+    AllTestResultsExt(boolean aggregationDeferred, SymbolTable symbols) {
         super(null);
+        this.aggregationDeferred = aggregationDeferred;
+        this.symbols = symbols;
     }
 
     @Override
@@ -28,9 +60,104 @@ public class AllTestResultsExt extends CompositeTestResultsExt {
         return null;
     }
 
+    /**
+     * @return ids of the names stored by the test results of this model.
+     */
+    SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return arena holding the stack traces and standard output and error of this model.
+     */
+    TextArena getTextArena() {
+        return textArena;
+    }
+
+    /**
+     * @return stack traces of the failures of this model, each distinct trace once.
+     */
+    FailureTextStore getFailureTexts() {
+        return failureTexts;
+    }
+
+    /**
+     * @param outputDir directory the standard output and error of classes are written to as they
+     *                  are added, see {@link OutputFile}, or {@code null} to keep them in the
+     *                  {@link TextArena}.
+     */
+    void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    File getOutputDir() {
+        return outputDir;
+    }
+
+    boolean isAggregationDeferred() {
+        return aggregationDeferred;
+    }
+
+    /**
+     * Computes the aggregates of a model with deferred aggregation in one pass: classes from
+     * their rows, in parallel on the executor unless it is {@code null}, then packages and the
+     * model from their children. Does nothing if aggregation is not deferred.
+     */
+    void aggregate(ExecutorService executor) {
+        if (!aggregationDeferred) {
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (PackageTestResultsExt packageResults : packages.values()) {
+            for (final ClassTestResultsExt classResults : packageResults.getClasses()) {
+                if (executor == null) {
+                    classResults.aggregate();
+                } else {
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            classResults.aggregate();
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+        if (executor != null) {
+            try {
+                for (Future<Void> task : executor.invokeAll(tasks)) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GenerateReportException("Interrupted while aggregating test results.", e);
+            } catch (ExecutionException e) {
+                throw new GenerateReportException("Could not aggregate test results.", e.getCause());
+            }
+        }
+        aggregatePackages();
+    }
+
+    /**
+     * Computes the aggregates of the packages and of the model from those of their classes.
+     */
+    void aggregatePackages() {
+        clearAggregates();
+        for (PackageTestResultsExt packageResults : packages.values()) {
+            packageResults.clearAggregates();
+            for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                packageResults.addAggregates(classResults);
+            }
+            addAggregates(packageResults);
+        }
+    }
+
     public TestResultExt addTest(String className, String testName, long duration,
                                  String device, String project, String flavor) {
         PackageTestResultsExt packageResults = addPackageForClass(className);
+        if (aggregationDeferred) {
+            return packageResults.addTest(className, testName, duration, device, project, flavor);
+        }
         TestResultExt testResult = addTest(
                 packageResults.addTest(className, testName, duration, device, project, flavor));
 
@@ -45,14 +172,15 @@ public class AllTestResultsExt extends CompositeTestResultsExt {
     }
 
     private PackageTestResultsExt addPackageForClass(String className) {
-        String packageName;
+        return addPackage(getPackageName(className));
+    }
+
+    /**
+     * @return name of the package of the class, empty for the default package.
+     */
+    static String getPackageName(String className) {
         int pos = className.lastIndexOf(".");
-        if (pos != -1) {
-            packageName = className.substring(0, pos);
-        } else {
-            packageName = "";
-        }
-        return addPackage(packageName);
+        return pos != -1 ? className.substring(0, pos) : "";
     }
 
     private PackageTestResultsExt addPackage(String packageName) {
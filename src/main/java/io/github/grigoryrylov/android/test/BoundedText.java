@@ -0,0 +1,120 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Collects text up to a limit. Text beyond it keeps its first half of the limit as it arrives
+ * and the last half in a ring buffer, with a marker giving the number of characters left out in
+ * between, so collecting a text of any length takes memory bounded by the limit.
+ */
+final class BoundedText {
+    private final int headLimit;
+    private final StringBuilder head = new StringBuilder();
+    private final char[] tail;
+    private int tailStart;
+    private int tailLength;
+    private long truncated;
+
+    /**
+     * @param limit maximum number of characters kept, 0 to keep all of them.
+     */
+    BoundedText(int limit) {
+        headLimit = limit > 0 ? limit - limit / 2 : Integer.MAX_VALUE;
+        tail = new char[limit > 0 ? limit / 2 : 0];
+    }
+
+    /**
+     * @return {@code text}, or its first and last characters with a marker if it is longer than
+     * the limit.
+     */
+    static String truncate(String text, int limit) {
+        if (limit <= 0 || text.length() <= limit) {
+            return text;
+        }
+        BoundedText bounded = new BoundedText(limit);
+        bounded.append(text);
+        return bounded.toString();
+    }
+
+    void append(char[] chars, int start, int length) {
+        int headLength = Math.min(length, headLimit - head.length());
+        head.append(chars, start, headLength);
+        for (int i = start + headLength; i < start + length; i++) {
+            appendTail(chars[i]);
+        }
+    }
+
+    void append(CharSequence text) {
+        if (headLimit == Integer.MAX_VALUE) {
+            XmlText.append(text, head);
+            return;
+        }
+        if (text instanceof XmlText) {
+            // decoded a chunk at a time, so only the kept characters are in memory
+            try {
+                ((XmlText) text).writeTo(new Writer() {
+                    @Override
+                    public void write(char[] chars, int offset, int length) {
+                        BoundedText.this.append(chars, offset, length);
+                    }
+
+                    @Override
+                    public void flush() {
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                });
+            } catch (IOException e) {
+                // appending does not fail
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+        int headLength = Math.min(text.length(), headLimit - head.length());
+        head.append(text, 0, headLength);
+        for (int i = headLength; i < text.length(); i++) {
+            appendTail(text.charAt(i));
+        }
+    }
+
+    private void appendTail(char ch) {
+        if (tail.length == 0) {
+            truncated++;
+        } else if (tailLength < tail.length) {
+            tail[(tailStart + tailLength++) % tail.length] = ch;
+        } else {
+            tail[tailStart] = ch;
+            tailStart = (tailStart + 1) % tail.length;
+            truncated++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(head.length() + tailLength + 64);
+        text.append(head);
+        int start = tailStart;
+        int length = tailLength;
+        if (truncated > 0) {
+            // do not split surrogate pairs at either side of the marker
+            long dropped = truncated;
+            if (text.length() > 0 && Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+                text.setLength(text.length() - 1);
+                dropped++;
+            }
+            if (length > 0 && Character.isLowSurrogate(tail[start])) {
+                start = (start + 1) % tail.length;
+                length--;
+                dropped++;
+            }
+            text.append("\n... ").append(dropped).append(" characters truncated ...\n");
+        }
+        for (int i = 0; i < length; i++) {
+            text.append(tail[(start + i) % tail.length]);
+        }
+        return text.toString();
+    }
+}
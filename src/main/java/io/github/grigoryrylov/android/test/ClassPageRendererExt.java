@@ -16,9 +16,15 @@ import java.util.Set;
  */
 class ClassPageRendererExt extends PageRendererExt<ClassTestResultsExt> {
     private final CodePanelRenderer codePanelRenderer = new CodePanelRenderer();
+    private final boolean stackTraceReferences;
 
-    ClassPageRendererExt(ReportType reportType) {
+    /**
+     * @param stackTraceReferences whether a stack trace already on the page is rendered as a
+     *                             link to its first copy instead of again.
+     */
+    ClassPageRendererExt(ReportType reportType, boolean stackTraceReferences) {
         super(reportType);
+        this.stackTraceReferences = stackTraceReferences;
     }
 
     @Override
@@ -144,6 +150,10 @@ class ClassPageRendererExt extends PageRendererExt<ClassTestResultsExt> {
         Map<String, Map<String, TestResultExt>> results = getResults().getTestResultsMap();
 
         Map<String, ClassPageRendererExt.TestPercent> testPassPercent = new HashMap<>();
+        // indexes in copyTestNames of the stack traces rendered on the page, by trace id
+        Map<Integer, Integer> renderedTraces = new HashMap<>();
+        // names of the tests whose failure holds the copy of a stack trace, in page order
+        List<String> copyTestNames = new ArrayList<>();
 
         for (TestResultExt test : getResults().getFailures()) {
             String testName = test.getName();
@@ -201,12 +211,35 @@ class ClassPageRendererExt extends PageRendererExt<ClassTestResultsExt> {
                             .endElement();
                 }
 
-                codePanelRenderer.render(failure.getStackTrace(), htmlWriter);
+                renderStackTrace(failure, name, renderedTraces, copyTestNames, htmlWriter);
             }
             htmlWriter.endElement();
         }
     }
 
+    private void renderStackTrace(TestResultExt.TestFailure failure, String testName,
+                                  Map<Integer, Integer> renderedTraces, List<String> copyTestNames,
+                                  SimpleHtmlWriter htmlWriter) throws IOException {
+        if (!stackTraceReferences) {
+            codePanelRenderer.render(failure.getStackTraceText(), htmlWriter);
+            return;
+        }
+        // anchors are numbered per page, so pages do not depend on the other classes of the model
+        Integer copyIndex = renderedTraces.get(failure.getStackTraceId());
+        if (copyIndex != null) {
+            htmlWriter.startElement("p").attribute("class", "stackTraceReference")
+                    .characters("Same stack trace as ")
+                    .startElement("a").attribute("href", "#stackTrace-" + (copyIndex + 1))
+                    .characters(copyTestNames.get(copyIndex)).endElement()
+                    .endElement();
+            return;
+        }
+        renderedTraces.put(failure.getStackTraceId(), copyTestNames.size());
+        copyTestNames.add(testName);
+        htmlWriter.startElement("a").attribute("name", "stackTrace-" + copyTestNames.size()).characters("").endElement();
+        codePanelRenderer.render(failure.getStackTraceText(), htmlWriter);
+    }
+
     @Override
     protected void registerTabs() {
         addFailuresTab();
@@ -216,6 +249,35 @@ class ClassPageRendererExt extends PageRendererExt<ClassTestResultsExt> {
                 renderTests(writer);
             }
         });
+        addOutputTab("Standard output", getResults().getStandardOutputFile());
+        addOutputTab("Standard error", getResults().getStandardErrorFile());
         addDeviceAndVariantTabs();
     }
+
+    private void addOutputTab(String title, final OutputFile outputFile) {
+        if (outputFile == null) {
+            return;
+        }
+        addTab(title, new ErroringAction<SimpleHtmlWriter>() {
+            @Override
+            public void doExecute(SimpleHtmlWriter writer) throws IOException {
+                renderOutput(outputFile, writer);
+            }
+        });
+    }
+
+    /**
+     * Renders an empty block that report.js fills with the file in chunks once the tab is opened.
+     */
+    private void renderOutput(OutputFile outputFile, SimpleHtmlWriter htmlWriter) throws IOException {
+        String fileName = outputFile.getFile().getName();
+        htmlWriter.startElement("span").attribute("class", "code")
+                .startElement("pre").attribute("class", "output").attribute("data-src", fileName)
+                .attribute("data-size", String.valueOf(outputFile.getSize())).characters("").endElement()
+                .endElement();
+        htmlWriter.startElement("p").attribute("class", "outputFile")
+                .startElement("a").attribute("href", fileName).characters(fileName).endElement()
+                .characters(String.format(" (%d bytes)", outputFile.getSize()))
+                .endElement();
+    }
 }
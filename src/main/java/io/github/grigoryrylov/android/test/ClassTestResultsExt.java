@@ -1,9 +1,12 @@
 package io.github.grigoryrylov.android.test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Created by grishberg on 08.04.18.
@@ -11,14 +14,23 @@ import java.util.TreeSet;
 public class ClassTestResultsExt extends CompositeTestResultsExt {
     private final String name;
     private final PackageTestResultsExt packageResults;
-    private final Set<TestResultExt> results = new TreeSet<>();
-    private final StringBuilder standardOutput = new StringBuilder();
-    private final StringBuilder standardError = new StringBuilder();
+    private final TestResultStore store;
+    private final boolean aggregationDeferred;
+    private final TextArena textArena;
+    /** Output of the class in the {@link TextArena} of the model, created with the first entry. */
+    private List<TextArena.Text> standardOutput;
+    private List<TextArena.Text> standardError;
+    /** Output of the class written to the output directory of the model, if it has one. */
+    private OutputFile standardOutputFile;
+    private OutputFile standardErrorFile;
 
     public ClassTestResultsExt(String name, PackageTestResultsExt packageResults) {
         super(packageResults);
         this.name = name;
         this.packageResults = packageResults;
+        store = new TestResultStore(packageResults.getSymbols(), packageResults.getFailureTexts());
+        aggregationDeferred = packageResults.isAggregationDeferred();
+        textArena = packageResults.getTextArena();
     }
 
     @Override
@@ -45,7 +57,7 @@ public class ClassTestResultsExt extends CompositeTestResultsExt {
 
     public Map<String, Map<String, TestResultExt>> getTestResultsMap() {
         Map<String, Map<String, TestResultExt>> map = new HashMap<>();
-        for (TestResultExt result : results) {
+        for (TestResultExt result : getResults()) {
             String device = result.getDevice();
 
             Map<String, TestResultExt> deviceMap = map.get(device);
@@ -60,18 +72,92 @@ public class ClassTestResultsExt extends CompositeTestResultsExt {
         return map;
     }
 
+    /**
+     * @return views of the test results in their natural order.
+     */
+    Collection<TestResultExt> getResults() {
+        List<TestResultExt> results = new ArrayList<>(store.size());
+        for (int row = 0; row < store.size(); row++) {
+            results.add(new TestResultExt(this, row));
+        }
+        Collections.sort(results);
+        return results;
+    }
+
+    TestResultStore getStore() {
+        return store;
+    }
+
+    boolean isAggregationDeferred() {
+        return aggregationDeferred;
+    }
+
+    /**
+     * Computes the counts, failures and device and variant results of this class from its rows.
+     */
+    void aggregate() {
+        clearAggregates();
+        for (int row = 0; row < store.size(); row++) {
+            aggregateTest(new TestResultExt(this, row));
+        }
+    }
+
+    /**
+     * Copies the aggregates of {@code other}, a class with the same name in another model, with
+     * rows for its failed tests only. The copied failures keep their messages and screenshots
+     * but not their stack traces, which is all the overview and package pages read.
+     */
+    void copySummary(ClassTestResultsExt other) {
+        Map<TestResultExt, TestResultExt> failedTests = new HashMap<>();
+        for (TestResultExt test : other.getFailures()) {
+            int row = store.add(test.getName(), test.getDuration(), test.getDevice(), test.getProject(),
+                    test.getFlavor());
+            if (test.isIgnored()) {
+                store.setIgnored(row);
+            }
+            for (TestResultExt.TestFailure failure : test.getFailures()) {
+                store.addFailure(row, new TestResultExt.TestFailure(failure.getMessage(), store.getFailureTexts(),
+                        "", failure.getExceptionType(), failure.getScreenshotPath()));
+            }
+            failedTests.put(test, new TestResultExt(this, row));
+        }
+        copyAggregates(other, failedTests);
+    }
+
+    /**
+     * @return standard error of the class, decoded from the arena or read from its file.
+     */
     public CharSequence getStandardError() {
-        return standardError;
+        return standardErrorFile != null ? standardErrorFile.read() : join(standardError);
     }
 
+    /**
+     * @return standard output of the class, decoded from the arena or read from its file.
+     */
     public CharSequence getStandardOutput() {
-        return standardOutput;
+        return standardOutputFile != null ? standardOutputFile.read() : join(standardOutput);
+    }
+
+    /**
+     * @return file the standard output was written to, or {@code null} if it is kept in memory or empty.
+     */
+    OutputFile getStandardOutputFile() {
+        return standardOutputFile != null && standardOutputFile.getSize() > 0 ? standardOutputFile : null;
+    }
+
+    /**
+     * @return file the standard error was written to, or {@code null} if it is kept in memory or empty.
+     */
+    OutputFile getStandardErrorFile() {
+        return standardErrorFile != null && standardErrorFile.getSize() > 0 ? standardErrorFile : null;
     }
 
     public TestResultExt addTest(String testName, long duration,
                                  String device, String project, String flavor) {
         TestResultExt test = new TestResultExt(testName, duration, device, project, flavor, this);
-        results.add(test);
+        if (aggregationDeferred) {
+            return test;
+        }
 
         addDevice(device, test);
         addVariant(project, flavor, test);
@@ -79,11 +165,49 @@ public class ClassTestResultsExt extends CompositeTestResultsExt {
         return addTest(test);
     }
 
-    public void addStandardOutput(String textContent) {
-        standardOutput.append(textContent);
+    public void addStandardOutput(CharSequence textContent) {
+        File outputDir = packageResults.getOutputDir();
+        if (outputDir == null) {
+            standardOutput = add(standardOutput, textContent);
+            return;
+        }
+        if (standardOutputFile == null) {
+            standardOutputFile = new OutputFile(new File(outputDir, name + ".stdout.txt"));
+        }
+        standardOutputFile.append(textContent);
+    }
+
+    public void addStandardError(CharSequence textContent) {
+        File outputDir = packageResults.getOutputDir();
+        if (outputDir == null) {
+            standardError = add(standardError, textContent);
+            return;
+        }
+        if (standardErrorFile == null) {
+            standardErrorFile = new OutputFile(new File(outputDir, name + ".stderr.txt"));
+        }
+        standardErrorFile.append(textContent);
+    }
+
+    private List<TextArena.Text> add(List<TextArena.Text> texts, CharSequence textContent) {
+        TextArena.Text text = textArena.add(textContent);
+        if (text.isEmpty()) {
+            return texts;
+        }
+        if (texts == null) {
+            texts = new ArrayList<>(1);
+        }
+        texts.add(text);
+        return texts;
     }
 
-    public void addStandardError(String textContent) {
-        standardError.append(textContent);
+    private static CharSequence join(List<TextArena.Text> texts) {
+        StringBuilder text = new StringBuilder();
+        if (texts != null) {
+            for (TextArena.Text part : texts) {
+                text.append(part);
+            }
+        }
+        return text;
     }
 }
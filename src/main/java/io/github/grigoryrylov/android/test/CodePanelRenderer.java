@@ -28,4 +28,17 @@ public class CodePanelRenderer extends ReportRenderer<String, SimpleHtmlWriter>
             .startElement("pre").characters(text).endElement()
         .endElement();
     }
+
+    /**
+     * Renders text of a {@link TextArena}, decoded into the writer in chunks.
+     */
+    void render(TextArena.Text text, SimpleHtmlWriter htmlWriter) throws IOException {
+        htmlWriter.startElement("span").attribute("class", "code")
+            .startElement("pre").characters("");
+        if (text != null) {
+            text.writeTo(htmlWriter);
+        }
+        htmlWriter.endElement()
+        .endElement();
+    }
 }
@@ -3,10 +3,14 @@ package io.github.grigoryrylov.android.test;
 import org.gradle.fork.api.tasks.testing.TestResult;
 
 import java.math.BigDecimal;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Created by grishberg on 08.04.18.
@@ -14,11 +18,13 @@ import java.util.TreeSet;
 public abstract class CompositeTestResultsExt extends TestResultModel {
     private final CompositeTestResultsExt parent;
     private int tests;
-    private final Set<TestResultExt> failures = new TreeSet<>();
-    private final Set<TestResultExt> ignored = new TreeSet<>();
+    /** Each failed test once, sorted when they are read. Created with the first entry, like the maps below. */
+    private List<TestResultExt> failures;
+    private boolean failuresSorted;
+    private int ignored;
     private long duration;
-    private final Map<String, DeviceTestResultsExt> devices = new TreeMap<>();
-    private final Map<String, VariantTestResultsExt> variants = new TreeMap<>();
+    private Map<String, DeviceTestResultsExt> devices;
+    private Map<String, VariantTestResultsExt> variants;
 
     protected CompositeTestResultsExt(CompositeTestResultsExt parent) {
         this.parent = parent;
@@ -35,11 +41,11 @@ public abstract class CompositeTestResultsExt extends TestResultModel {
     }
 
     public int getFailureCount() {
-        return failures.size();
+        return failures != null ? failures.size() : 0;
     }
 
     public int getIgnoredCount() {
-        return ignored.size();
+        return ignored;
     }
 
     @Override
@@ -53,20 +59,44 @@ public abstract class CompositeTestResultsExt extends TestResultModel {
     }
 
     public Set<TestResultExt> getFailures() {
-        return failures;
+        if (failures == null) {
+            return Collections.emptySet();
+        }
+        sortFailures();
+        return new AbstractSet<TestResultExt>() {
+            @Override
+            public Iterator<TestResultExt> iterator() {
+                return Collections.unmodifiableList(failures).iterator();
+            }
+
+            @Override
+            public int size() {
+                return failures.size();
+            }
+        };
+    }
+
+    /**
+     * Sorts the failures once they are read, pages of a model may be rendered in parallel.
+     */
+    private synchronized void sortFailures() {
+        if (!failuresSorted) {
+            Collections.sort(failures);
+            failuresSorted = true;
+        }
     }
 
     Map<String, DeviceTestResultsExt> getResultsPerDevices() {
-        return devices;
+        return devices != null ? devices : Collections.<String, DeviceTestResultsExt>emptyMap();
     }
 
     Map<String, VariantTestResultsExt> getResultsPerVariants() {
-        return variants;
+        return variants != null ? variants : Collections.<String, VariantTestResultsExt>emptyMap();
     }
 
     @Override
     public TestResult.ResultType getResultType() {
-        return failures.isEmpty() ? TestResult.ResultType.SUCCESS : TestResult.ResultType.FAILURE;
+        return getFailureCount() == 0 ? TestResult.ResultType.SUCCESS : TestResult.ResultType.FAILURE;
     }
 
     public String getFormattedSuccessRate() {
@@ -89,20 +119,24 @@ public abstract class CompositeTestResultsExt extends TestResultModel {
                 BigDecimal.ROUND_DOWN).multiply(BigDecimal.valueOf(100)).intValue();
     }
 
+    /**
+     * Adds the test to the failures here, in the parent and in the device and variant results,
+     * once per test.
+     */
     protected void failed(TestResultExt failedTest,
                           String deviceName, String projectName, String flavorName) {
-        failures.add(failedTest);
+        addFailure(failedTest);
         if (parent != null) {
             parent.failed(failedTest, deviceName, projectName, flavorName);
         }
 
-        DeviceTestResultsExt deviceResults = devices.get(deviceName);
+        DeviceTestResultsExt deviceResults = getResultsPerDevices().get(deviceName);
         if (deviceResults != null) {
             deviceResults.failed(failedTest, deviceName, projectName, flavorName);
         }
 
         String key = getVariantKey(projectName, flavorName);
-        VariantTestResultsExt variantResults = variants.get(key);
+        VariantTestResultsExt variantResults = getResultsPerVariants().get(key);
         if (variantResults != null) {
             variantResults.failed(failedTest, deviceName, projectName, flavorName);
         }
@@ -114,43 +148,149 @@ public abstract class CompositeTestResultsExt extends TestResultModel {
         return test;
     }
 
+    /**
+     * Counts the test as ignored here, in the parent and in the device and variant results,
+     * once per test.
+     */
     protected void addIgnoredTest(TestResultExt test) {
-        ignored.add(test);
+        ignored++;
         if (parent != null) {
             parent.addIgnoredTest(test);
         }
         String deviceName = test.getDevice();
-        DeviceTestResultsExt deviceResults = devices.get(deviceName);
+        DeviceTestResultsExt deviceResults = getResultsPerDevices().get(deviceName);
         if (deviceResults != null) {
             deviceResults.addIgnoredTest(test);
         }
 
         String key = getVariantKey(test.getProject(), test.getFlavor());
-        VariantTestResultsExt variantResults = variants.get(key);
+        VariantTestResultsExt variantResults = getResultsPerVariants().get(key);
         if (variantResults != null) {
             variantResults.addIgnoredTest(test);
         }
     }
 
     protected void addDevice(String deviceName, TestResultExt testResult) {
+        getDeviceResults(deviceName).addTest(testResult);
+    }
+
+    protected void addVariant(String projectName, String flavorName, TestResultExt testResult) {
+        getVariantResults(getVariantKey(projectName, flavorName)).addTest(testResult);
+    }
+
+    /**
+     * Clears the counts, failures and device and variant results before they are computed again,
+     * see {@link AllTestResultsExt#aggregate}.
+     */
+    void clearAggregates() {
+        tests = 0;
+        duration = 0;
+        ignored = 0;
+        failures = null;
+        devices = null;
+        variants = null;
+    }
+
+    /**
+     * Counts the test here and in the results of its device and variant, without the parent.
+     */
+    void aggregateTest(TestResultExt test) {
+        countTest(test);
+        CompositeTestResultsExt deviceResults = getDeviceResults(test.getDevice());
+        deviceResults.countTest(test);
+        CompositeTestResultsExt variantResults = getVariantResults(getVariantKey(test.getProject(), test.getFlavor()));
+        variantResults.countTest(test);
+    }
+
+    /**
+     * Adds the aggregates of a child, including its device and variant results, to this composite.
+     */
+    void addAggregates(CompositeTestResultsExt child) {
+        addCounts(child);
+        for (CompositeTestResultsExt deviceResults : child.getResultsPerDevices().values()) {
+            CompositeTestResultsExt results = getDeviceResults(deviceResults.getName());
+            results.addCounts(deviceResults);
+        }
+        for (CompositeTestResultsExt variantResults : child.getResultsPerVariants().values()) {
+            CompositeTestResultsExt results = getVariantResults(variantResults.getName());
+            results.addCounts(variantResults);
+        }
+    }
+
+    /**
+     * Copies the aggregates of {@code other}, including its device and variant results, with
+     * its failed tests replaced by their copies.
+     */
+    void copyAggregates(CompositeTestResultsExt other, Map<TestResultExt, TestResultExt> failedTests) {
+        clearAggregates();
+        tests = other.tests;
+        duration = other.duration;
+        ignored = other.ignored;
+        if (other.failures != null) {
+            for (TestResultExt failedTest : other.failures) {
+                addFailure(failedTests.get(failedTest));
+            }
+        }
+        for (CompositeTestResultsExt deviceResults : other.getResultsPerDevices().values()) {
+            getDeviceResults(deviceResults.getName()).copyAggregates(deviceResults, failedTests);
+        }
+        for (CompositeTestResultsExt variantResults : other.getResultsPerVariants().values()) {
+            getVariantResults(variantResults.getName()).copyAggregates(variantResults, failedTests);
+        }
+    }
+
+    private void countTest(TestResultExt test) {
+        tests++;
+        duration += test.getDuration();
+        if (test.isIgnored()) {
+            ignored++;
+        }
+        if (test.hasFailures()) {
+            addFailure(test);
+        }
+    }
+
+    private void addCounts(CompositeTestResultsExt child) {
+        tests += child.tests;
+        duration += child.duration;
+        ignored += child.ignored;
+        if (child.failures != null) {
+            for (TestResultExt failedTest : child.failures) {
+                addFailure(failedTest);
+            }
+        }
+    }
+
+    private void addFailure(TestResultExt failedTest) {
+        if (failures == null) {
+            failures = new ArrayList<>(1);
+        }
+        failures.add(failedTest);
+        failuresSorted = failures.size() == 1;
+    }
+
+    private DeviceTestResultsExt getDeviceResults(String deviceName) {
+        if (devices == null) {
+            devices = new TreeMap<>();
+        }
         DeviceTestResultsExt deviceResults = devices.get(deviceName);
         if (deviceResults == null) {
             deviceResults = new DeviceTestResultsExt(deviceName, null);
             devices.put(deviceName, deviceResults);
         }
-
-        deviceResults.addTest(testResult);
+        return deviceResults;
     }
 
-    protected void addVariant(String projectName, String flavorName, TestResultExt testResult) {
-        String key = getVariantKey(projectName, flavorName);
+    private VariantTestResultsExt getVariantResults(String key) {
+        if (variants == null) {
+            variants = new TreeMap<>();
+        }
         VariantTestResultsExt variantResults = variants.get(key);
         if (variantResults == null) {
             variantResults = new VariantTestResultsExt(key, null);
             variants.put(key, variantResults);
         }
-
-        variantResults.addTest(testResult);
+        return variantResults;
     }
 
     private static String getVariantKey(String projectName, String flavorName) {
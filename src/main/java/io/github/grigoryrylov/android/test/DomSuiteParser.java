@@ -0,0 +1,94 @@
+package io.github.grigoryrylov.android.test;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import java.io.InputStream;
+import java.math.BigDecimal;
+
+/**
+ * Parses the whole result file into a W3C {@link Document} before reporting its content.
+ */
+public class DomSuiteParser implements SuiteParser {
+    private final XmlParserContext context;
+    private int captureLimit;
+
+    public DomSuiteParser() {
+        this(XmlParserContext.getDefault());
+    }
+
+    public DomSuiteParser(XmlParserContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sets the maximum number of characters kept of each failure body and output element, longer
+     * text keeps its beginning and end around a marker. Text is kept whole by default.
+     */
+    public void setCaptureLimit(int captureLimit) {
+        this.captureLimit = captureLimit;
+    }
+
+    @Override
+    public void parse(InputStream inputStream, TestSuiteHandler handler) throws Exception {
+        Document document;
+        DocumentBuilder documentBuilder = context.acquireDocumentBuilder();
+        try {
+            document = documentBuilder.parse(new InputSource(inputStream));
+        } finally {
+            context.releaseDocumentBuilder(documentBuilder);
+        }
+
+        XmlParserContext.PropertyExpressions expressions = context.acquirePropertyExpressions();
+        try {
+            NodeList propertiesList = document.getElementsByTagName("properties");
+            for (int i = 0; i < propertiesList.getLength(); i++) {
+                Element properties = (Element) propertiesList.item(i);
+                handler.onProperties(
+                        expressions.device.evaluate(properties),
+                        expressions.project.evaluate(properties),
+                        expressions.flavor.evaluate(properties));
+            }
+        } finally {
+            context.releasePropertyExpressions(expressions);
+        }
+
+        NodeList testCases = document.getElementsByTagName("testcase");
+        for (int i = 0; i < testCases.getLength(); i++) {
+            Element testCase = (Element) testCases.item(i);
+            String className = testCase.getAttribute("classname");
+            String testName = testCase.getAttribute("name");
+            BigDecimal duration = TestReportExt.parse(testCase.getAttribute("time"));
+            duration = duration.multiply(BigDecimal.valueOf(1000));
+            NodeList failures = testCase.getElementsByTagName("failure");
+            NodeList ignored = testCase.getElementsByTagName("skipped");
+
+            if (ignored.getLength() > 0) {
+                handler.onSkippedTestCase(className, testName);
+                continue;
+            }
+            handler.onTestCase(className, testName, duration.longValue());
+            for (int j = 0; j < failures.getLength(); j++) {
+                Element failure = (Element) failures.item(j);
+                handler.onFailure(failure.getAttribute("message"), BoundedText.truncate(failure.getTextContent(), captureLimit));
+            }
+        }
+        NodeList ignoredTestCases = document.getElementsByTagName("ignored-testcase");
+        for (int i = 0; i < ignoredTestCases.getLength(); i++) {
+            Element testCase = (Element) ignoredTestCases.item(i);
+            handler.onSkippedTestCase(testCase.getAttribute("classname"), testCase.getAttribute("name"));
+        }
+        handler.onTestSuite(document.getDocumentElement().getAttribute("name"));
+        NodeList stdOutElements = document.getElementsByTagName("system-out");
+        for (int i = 0; i < stdOutElements.getLength(); i++) {
+            handler.onStandardOutput(BoundedText.truncate(stdOutElements.item(i).getTextContent(), captureLimit));
+        }
+        NodeList stdErrElements = document.getElementsByTagName("system-err");
+        for (int i = 0; i < stdErrElements.getLength(); i++) {
+            handler.onStandardError(BoundedText.truncate(stdErrElements.item(i).getTextContent(), captureLimit));
+        }
+    }
+}
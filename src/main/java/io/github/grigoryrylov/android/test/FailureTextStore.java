@@ -0,0 +1,82 @@
+package io.github.grigoryrylov.android.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps each distinct stack trace of a model once. Failures refer to their trace by an id given
+ * out by content, so the failures of a broken precondition shared by many tests hold one copy of
+ * the trace, and a page can render a trace it already contains as a reference to that copy.
+ * <p>
+ * Traces are kept in a {@link TextArena}, or left in their result file, and compared after
+ * normalizing line separators to {@code \n}.
+ */
+final class FailureTextStore {
+    private static final int NULL_ID = 0;
+
+    private final TextArena arena;
+    /** Ids of the traces by the hash code of their text, most hash codes have a single trace. */
+    private final Map<Integer, int[]> ids = new HashMap<>();
+    private final List<TextArena.Text> texts = new ArrayList<>();
+
+    FailureTextStore(TextArena arena) {
+        this.arena = arena;
+        texts.add(null);
+    }
+
+    /**
+     * @return id of the normalized trace, the same for every equal trace. A {@link SourceText} is
+     * kept as it is and only read if an earlier trace has the same hash code.
+     */
+    synchronized int add(CharSequence stackTrace) {
+        if (stackTrace == null) {
+            return NULL_ID;
+        }
+        SourceText source = stackTrace instanceof SourceText ? (SourceText) stackTrace : null;
+        String text = source == null ? normalize(stackTrace.toString()) : null;
+        int hash = source == null ? text.hashCode() : source.getContentHash();
+        int[] candidates = ids.get(hash);
+        if (candidates != null) {
+            if (text == null) {
+                text = normalize(source.toString());
+            }
+            for (int id : candidates) {
+                if (texts.get(id).contentEquals(text)) {
+                    return id;
+                }
+            }
+        }
+        int id = texts.size();
+        texts.add(source != null ? source : arena.add(text));
+        if (candidates == null) {
+            ids.put(hash, new int[]{id});
+        } else {
+            int[] extended = Arrays.copyOf(candidates, candidates.length + 1);
+            extended[candidates.length] = id;
+            ids.put(hash, extended);
+        }
+        return id;
+    }
+
+    /**
+     * @return handle of the trace, or {@code null} for a missing trace.
+     */
+    synchronized TextArena.Text get(int id) {
+        return texts.get(id);
+    }
+
+    String getText(int id) {
+        TextArena.Text text = get(id);
+        return text != null ? text.toString() : null;
+    }
+
+    static String normalize(String text) {
+        if (text == null || text.indexOf('\r') == -1) {
+            return text;
+        }
+        return text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+}
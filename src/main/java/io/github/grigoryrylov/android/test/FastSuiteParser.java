@@ -0,0 +1,300 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reads result files with {@link JUnitXmlTokenizer}, falling back to a JAXP based parser for
+ * files the tokenizer does not understand.
+ * <p>
+ * Events of the tokenizer are recorded first and only sent to the handler once the whole file
+ * has been read, so a fallback never leaves the handler with a half merged file.
+ * <p>
+ * When called on a fork-join pool, large files are split at {@code <testcase>} boundaries and
+ * the chunks are read in parallel on that pool. Their events are still sent in document order,
+ * so properties of the suite apply to the test cases of every chunk.
+ */
+public class FastSuiteParser implements SuiteParser {
+    private final SuiteParser fallback;
+    private long mappingThreshold = Long.MAX_VALUE;
+    private int chunkSize = Integer.MAX_VALUE;
+    private boolean referenceText;
+    private boolean lazyStackTraces;
+    private int captureLimit;
+
+    public FastSuiteParser() {
+        this(new StaxSuiteParser());
+    }
+
+    public FastSuiteParser(SuiteParser fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Sets the size in bytes from which {@link #parse(File, TestSuiteHandler)} maps files into
+     * memory, files are never mapped by default.
+     */
+    public void setMappingThreshold(long mappingThreshold) {
+        this.mappingThreshold = mappingThreshold;
+    }
+
+    /**
+     * Sets the size in bytes of the chunks read in parallel, files are only split if they hold
+     * at least two chunks. Files are never split by default.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Makes failure bodies and output of documents read into memory reach the handler as
+     * {@link XmlText} referring to their bytes, like those of mapped files, off by default.
+     */
+    public void setReferenceText(boolean referenceText) {
+        this.referenceText = referenceText;
+    }
+
+    /**
+     * Makes failure bodies of files read by {@link #parse(File, TestSuiteHandler)} reach the
+     * handler as {@link SourceText} referring to their position in the file, off by default.
+     */
+    public void setLazyStackTraces(boolean lazyStackTraces) {
+        this.lazyStackTraces = lazyStackTraces;
+    }
+
+    /**
+     * Sets the maximum number of characters kept of each failure body and output element, longer
+     * text keeps its beginning and end around a marker. Text is kept whole by default.
+     * Does not apply to the fallback parser, which has a limit of its own.
+     */
+    public void setCaptureLimit(int captureLimit) {
+        this.captureLimit = captureLimit;
+    }
+
+    @Override
+    public void parse(InputStream inputStream, TestSuiteHandler handler) throws Exception {
+        parse(inputStream, handler, referenceText);
+    }
+
+    private void parse(InputStream inputStream, TestSuiteHandler handler, boolean referenceText) throws Exception {
+        byte[] bytes = ByteStreams.toByteArray(inputStream);
+        if (!tryParse(ByteBuffer.wrap(bytes), 0, bytes.length, handler, referenceText)) {
+            fallback.parse(new ByteArrayInputStream(bytes), handler);
+        }
+    }
+
+    /**
+     * Reads a result file. Files of at least the mapping threshold are memory mapped and read
+     * in place: their failure bodies and output reach the handler as {@link XmlText} referring
+     * to the mapping rather than as strings.
+     *
+     * @return the mapping the events refer to, which the caller closes once the events have been
+     * merged, or {@code null} if the file was not mapped.
+     */
+    public Closeable parse(File file, TestSuiteHandler handler) throws Exception {
+        if (lazyStackTraces) {
+            handler = new SourceTextHandler(file, file.lastModified(), handler);
+        }
+        long length = file.length();
+        if (length >= mappingThreshold && length <= Integer.MAX_VALUE) {
+            MappedResultFile mapping = MappedResultFile.map(file);
+            boolean parsed = false;
+            try {
+                parsed = tryParse(mapping.getBuffer(), 0, mapping.size(), handler, true);
+            } finally {
+                if (!parsed) {
+                    mapping.close();
+                }
+            }
+            if (parsed) {
+                return mapping;
+            }
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            if (length >= mappingThreshold) {
+                // rejected by the tokenizer or too large for a single mapping
+                fallback.parse(inputStream, handler);
+            } else {
+                parse(inputStream, handler, referenceText || lazyStackTraces);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the document in {@code buffer} between {@code start} and {@code end}.
+     *
+     * @return {@code false} if the document has to be read by a JAXP parser, in this case
+     * the handler has not received any events.
+     */
+    boolean tryParse(ByteBuffer buffer, int start, int end, TestSuiteHandler handler) throws Exception {
+        return tryParse(buffer, start, end, handler, false);
+    }
+
+    /**
+     * @param referenceText whether failure bodies and output are passed on as {@link XmlText}
+     *                      referring to {@code buffer}.
+     */
+    boolean tryParse(ByteBuffer buffer, int start, int end, TestSuiteHandler handler, boolean referenceText)
+            throws Exception {
+        List<SuiteResults> parts = null;
+        if (end - start >= 2L * chunkSize && ForkJoinTask.inForkJoinPool()) {
+            parts = tryParseChunks(buffer, start, end, referenceText);
+        }
+        if (parts == null) {
+            SuiteResults results = new SuiteResults();
+            try {
+                new JUnitXmlTokenizer(buffer, start, end, new SuiteContentReader(results, 0, captureLimit), referenceText)
+                        .readDocument();
+            } catch (JUnitXmlTokenizer.UnsupportedInputException e) {
+                return false;
+            } catch (JUnitXmlTokenizer.UnsupportedAttributeException e) {
+                return false;
+            }
+            parts = Collections.singletonList(results);
+        }
+        for (SuiteResults part : parts) {
+            part.replay(handler);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the document split into chunks on the current fork-join pool.
+     *
+     * @return results of the document start and of each chunk in document order, or {@code null}
+     * if the document cannot be split and has to be read as a whole.
+     */
+    private List<SuiteResults> tryParseChunks(ByteBuffer buffer, int start, int end, boolean referenceText)
+            throws Exception {
+        int[] chunkStarts = new JUnitXmlTokenizer(buffer, start, end, null).findChunkStarts(chunkSize);
+        if (chunkStarts.length < 2) {
+            return null;
+        }
+        SuiteResults startResults = new SuiteResults();
+        JUnitXmlTokenizer documentStart = new JUnitXmlTokenizer(buffer, start, chunkStarts[0],
+                new SuiteContentReader(startResults, 0, captureLimit), referenceText);
+        try {
+            documentStart.readDocumentStart();
+        } catch (JUnitXmlTokenizer.UnsupportedInputException e) {
+            return null;
+        } catch (JUnitXmlTokenizer.UnsupportedAttributeException e) {
+            return null;
+        }
+
+        List<ChunkTask> tasks = new ArrayList<>(chunkStarts.length);
+        for (int i = 0; i < chunkStarts.length; i++) {
+            boolean last = i == chunkStarts.length - 1;
+            tasks.add(new ChunkTask(buffer, chunkStarts[i], last ? end : chunkStarts[i + 1], referenceText,
+                    captureLimit, documentStart, last));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        List<SuiteResults> parts = new ArrayList<>(tasks.size() + 1);
+        parts.add(startResults);
+        for (ChunkTask task : tasks) {
+            if (task.failure instanceof JUnitXmlTokenizer.UnsupportedInputException
+                    || task.failure instanceof JUnitXmlTokenizer.UnsupportedAttributeException) {
+                return null;
+            }
+            if (task.failure != null) {
+                throw task.failure;
+            }
+            parts.add(task.results);
+        }
+        return parts;
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final JUnitXmlTokenizer tokenizer;
+        private final JUnitXmlTokenizer documentStart;
+        private final boolean last;
+        final SuiteResults results = new SuiteResults();
+        Exception failure;
+
+        ChunkTask(ByteBuffer buffer, int start, int end, boolean referenceText, int captureLimit,
+                  JUnitXmlTokenizer documentStart, boolean last) {
+            this.tokenizer = new JUnitXmlTokenizer(buffer, start, end,
+                    new SuiteContentReader(results, documentStart.getDepth(), captureLimit),
+                    referenceText);
+            this.documentStart = documentStart;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                tokenizer.readChunk(documentStart, last);
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Replaces failure bodies referring to the bytes of a file by {@link SourceText}.
+     */
+    private static class SourceTextHandler implements TestSuiteHandler {
+        private final File file;
+        private final long lastModified;
+        private final TestSuiteHandler handler;
+
+        SourceTextHandler(File file, long lastModified, TestSuiteHandler handler) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.handler = handler;
+        }
+
+        @Override
+        public void onTestSuite(String suiteName) {
+            handler.onTestSuite(suiteName);
+        }
+
+        @Override
+        public void onProperties(String deviceName, String projectName, String flavorName) {
+            handler.onProperties(deviceName, projectName, flavorName);
+        }
+
+        @Override
+        public void onTestCase(String className, String testName, long duration) {
+            handler.onTestCase(className, testName, duration);
+        }
+
+        @Override
+        public void onFailure(String message, CharSequence stackTrace) {
+            if (stackTrace instanceof XmlText) {
+                stackTrace = ((XmlText) stackTrace).inFile(file, lastModified);
+            }
+            handler.onFailure(message, stackTrace);
+        }
+
+        @Override
+        public void onSkippedTestCase(String className, String testName) {
+            handler.onSkippedTestCase(className, testName);
+        }
+
+        @Override
+        public void onStandardOutput(CharSequence text) {
+            handler.onStandardOutput(text);
+        }
+
+        @Override
+        public void onStandardError(CharSequence text) {
+            handler.onStandardError(text);
+        }
+    }
+}
@@ -27,8 +27,12 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class HtmlReportRenderer {
     private final Set<URL> resources = new HashSet<>();
@@ -41,51 +45,83 @@ public class HtmlReportRenderer {
         return renderer(new TextReportRendererImpl<>(renderer));
     }
 
+    /**
+     * @return renderer of a page; the resources it requires are copied once for all pages, see
+     * {@link #copyResources(File)}.
+     */
     public <T> TextReportRenderer<T> renderer(final TextReportRendererImpl<T> renderer) {
         return new TextReportRenderer<T>() {
             @Override
             protected void writeTo(T model, Writer out) throws Exception {
                 renderer.writeTo(model, out);
             }
+        };
+    }
 
-            @Override
-            public void writeTo(T model, File file) {
-                super.writeTo(model, file);
-                for (URL resource : resources) {
-                    String name = substringAfterLast(resource.getPath(), "/");
-                    String type = substringAfterLast(resource.getPath(), ".");
-                    File destFile = new File(file.getParentFile(), String.format("%s/%s", type, name));
-                    if (!destFile.exists()) {
-                        destFile.getParentFile().mkdirs();
-                        try {
-                            URLConnection urlConnection = resource.openConnection();
-                            urlConnection.setUseCaches(false);
-                            InputStream inputStream = null;
-                            try {
-                                inputStream = urlConnection.getInputStream();
-                                OutputStream outputStream = null;
-                                try {
-                                    outputStream = new BufferedOutputStream(
-                                            new FileOutputStream(destFile));
-                                    ByteStreams.copy(inputStream, outputStream);
-                                } finally {
-                                    if (outputStream != null) {
-                                        outputStream.close();
-                                    }
-                                }
-                            } finally {
-                                if (inputStream != null) {
-                                    inputStream.close();
-                                }
-                            }
-
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
+    /**
+     * Copies the required resources missing in the directory.
+     */
+    public void copyResources(File dir) {
+        for (URL resource : resources) {
+            copyResource(resource, dir);
+        }
+    }
+
+    /**
+     * Copies the required resources missing in the directory, each in a task of its own, so they
+     * are written while pages are rendered.
+     *
+     * @return the tasks, in no particular order.
+     */
+    List<Future<?>> copyResources(final File dir, ExecutorService executor) {
+        List<Future<?>> tasks = new ArrayList<>(resources.size());
+        for (final URL resource : resources) {
+            tasks.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    copyResource(resource, dir);
+                }
+            }));
+        }
+        return tasks;
+    }
+
+    /**
+     * Copies the resource unless the directory has it.
+     */
+    private static void copyResource(URL resource, File dir) {
+        String name = substringAfterLast(resource.getPath(), "/");
+        String type = substringAfterLast(resource.getPath(), ".");
+        File destFile = new File(dir, String.format("%s/%s", type, name));
+        if (destFile.exists()) {
+            return;
+        }
+        destFile.getParentFile().mkdirs();
+        try {
+            URLConnection urlConnection = resource.openConnection();
+            urlConnection.setUseCaches(false);
+            InputStream inputStream = null;
+            try {
+                inputStream = urlConnection.getInputStream();
+                OutputStream outputStream = null;
+                try {
+                    outputStream = new BufferedOutputStream(
+                            new FileOutputStream(destFile));
+                    ByteStreams.copy(inputStream, outputStream);
+                } finally {
+                    if (outputStream != null) {
+                        outputStream.close();
                     }
                 }
+            } finally {
+                if (inputStream != null) {
+                    inputStream.close();
+                }
             }
-        };
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private static class TextReportRendererImpl<T> extends TextReportRenderer<T> {
@@ -0,0 +1,185 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the raw output of {@code am instrument -r} line by line and reports each test to
+ * {@link TestSuiteHandler} as soon as its result status is complete.
+ * <p>
+ * Only the values of the status being read are kept, so the output of any number of runs logged
+ * one after another is read in constant memory. A test that started but has no result when its
+ * run ends, such as after a crash of the instrumented process, is reported as failed.
+ * <p>
+ * There are no timestamps in the protocol: durations are the time between the start and the
+ * result status of a test as they are read, which is only meaningful while the tests run. Output
+ * read after the run, such as from a saved file, reports durations of zero.
+ */
+class InstrumentationOutputParser {
+    private static final String STATUS = "INSTRUMENTATION_STATUS: ";
+    private static final String STATUS_CODE = "INSTRUMENTATION_STATUS_CODE: ";
+    private static final String RESULT = "INSTRUMENTATION_RESULT: ";
+    private static final String CODE = "INSTRUMENTATION_CODE: ";
+    private static final String FAILED = "INSTRUMENTATION_FAILED: ";
+    private static final String ABORTED = "INSTRUMENTATION_ABORTED: ";
+
+    private static final int STATUS_START = 1;
+    private static final int STATUS_IN_PROGRESS = 2;
+    private static final int STATUS_OK = 0;
+    private static final int STATUS_ERROR = -1;
+    private static final int STATUS_FAILURE = -2;
+    private static final int STATUS_IGNORED = -3;
+    private static final int STATUS_ASSUMPTION_FAILURE = -4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final boolean live;
+    private TestSuiteHandler handler;
+    private String className;
+    private String testName;
+    private StringBuilder stack;
+    private String shortMessage;
+    /** Value extended by lines without prefix, {@code null} for values that are not kept. */
+    private StringBuilder currentValue;
+    private String startedClassName;
+    private String startedTestName;
+    private long startTime;
+
+    /**
+     * @param live whether the output is read while the tests run, so durations can be measured.
+     */
+    InstrumentationOutputParser(boolean live) {
+        this.live = live;
+    }
+
+    void parse(InputStream inputStream, TestSuiteHandler handler) throws IOException {
+        this.handler = handler;
+        handler.onProperties("", "", "");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8), BUFFER_SIZE);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            if (line.startsWith(STATUS)) {
+                onValue(line.substring(STATUS.length()));
+            } else if (line.startsWith(STATUS_CODE)) {
+                onStatus(parseCode(line.substring(STATUS_CODE.length())));
+                clearValues();
+            } else if (line.startsWith(RESULT)) {
+                onValue(line.substring(RESULT.length()));
+            } else if (line.startsWith(CODE)) {
+                finishRun();
+            } else if (line.startsWith(FAILED) || line.startsWith(ABORTED)) {
+                shortMessage = line.substring(line.indexOf(' ') + 1);
+                finishRun();
+            } else if (currentValue != null) {
+                currentValue.append('\n').append(line);
+            }
+        }
+        finishRun();
+    }
+
+    private void onValue(String keyValue) {
+        int separator = keyValue.indexOf('=');
+        String key = separator == -1 ? keyValue : keyValue.substring(0, separator);
+        String value = separator == -1 ? "" : keyValue.substring(separator + 1);
+        currentValue = null;
+        if ("class".equals(key)) {
+            className = value;
+        } else if ("test".equals(key)) {
+            testName = value;
+        } else if ("stack".equals(key)) {
+            stack = currentValue = new StringBuilder(value);
+        } else if ("shortMsg".equals(key)) {
+            shortMessage = value;
+        }
+    }
+
+    private void onStatus(int code) {
+        if (className == null || testName == null || code == STATUS_IN_PROGRESS) {
+            return;
+        }
+        if (code == STATUS_START) {
+            failStartedTest();
+            startedClassName = className;
+            startedTestName = testName;
+            startTime = System.nanoTime();
+            return;
+        }
+        long duration = 0;
+        if (className.equals(startedClassName) && testName.equals(startedTestName)) {
+            duration = elapsedMillis();
+            startedClassName = null;
+            startedTestName = null;
+        }
+        switch (code) {
+            case STATUS_OK:
+                handler.onTestCase(className, testName, duration);
+                break;
+            case STATUS_ERROR:
+            case STATUS_FAILURE:
+                handler.onTestCase(className, testName, duration);
+                String stackTrace = stack != null ? stack.toString() : "";
+                handler.onFailure(firstLine(stackTrace), stackTrace);
+                break;
+            case STATUS_IGNORED:
+            case STATUS_ASSUMPTION_FAILURE:
+                handler.onSkippedTestCase(className, testName);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reports a test that has no result at the end of its run as failed.
+     */
+    private void finishRun() {
+        failStartedTest();
+        clearValues();
+        shortMessage = null;
+    }
+
+    private void failStartedTest() {
+        if (startedClassName == null) {
+            return;
+        }
+        String message = "Test did not complete";
+        if (shortMessage != null && !shortMessage.isEmpty()) {
+            message += ": " + shortMessage;
+        }
+        handler.onTestCase(startedClassName, startedTestName, elapsedMillis());
+        handler.onFailure(message, message);
+        startedClassName = null;
+        startedTestName = null;
+    }
+
+    private long elapsedMillis() {
+        return live ? (System.nanoTime() - startTime) / 1000000 : 0;
+    }
+
+    private void clearValues() {
+        className = null;
+        testName = null;
+        stack = null;
+        currentValue = null;
+    }
+
+    private static int parseCode(String code) throws IOException {
+        try {
+            return Integer.parseInt(code.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid status code: " + code, e);
+        }
+    }
+
+    private static String firstLine(String text) {
+        int end = text.indexOf('\n');
+        return end == -1 ? text : text.substring(0, end);
+    }
+}
@@ -0,0 +1,938 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+
+/**
+ * Scans the UTF-8 bytes of a JUnit XML result file directly and feeds {@link SuiteContentReader}.
+ * <p>
+ * Understands exactly the markup JUnit XML writers produce: elements, attributes, the five
+ * predefined entities, character references, CDATA sections, comments and processing instructions.
+ * Attribute values are decoded only when {@link SuiteContentReader} asks for them and text only
+ * when it is collected. Anything else, such as a DOCTYPE, another encoding, an unknown entity or
+ * malformed markup, raises {@link UnsupportedInputException} so the caller can fall back to JAXP.
+ * <p>
+ * When asked to reference text, content of a failure or output element made only of text and
+ * CDATA is validated but not decoded, it is passed on as {@link XmlText} pointing into the buffer.
+ */
+class JUnitXmlTokenizer {
+    private static final String[] KNOWN_NAMES = {
+            "testsuites", "testsuite", "properties", "property", "testcase", "failure", "error",
+            "skipped", "system-out", "system-err", "ignored-testcase"
+    };
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** Bytes decoded at a time by {@link #decodeContent(ByteBuffer, int, int, Writer)}. */
+    private static final int CHUNK_SIZE = 8 * 1024;
+    /** Bytes of the longest reference accepted by {@link #readReference}, from {@code &} to {@code ;}. */
+    private static final int MAX_REFERENCE_LENGTH = 11;
+
+    private final ByteBuffer buffer;
+    private final int end;
+    private final SuiteContentReader content;
+    private final boolean referenceText;
+    private final StringBuilder text = new StringBuilder();
+    private final AttributeValues attributeValues = new AttributeValues();
+    private int position;
+
+    /**
+     * Name offsets of open elements, two ints per element: start and end.
+     */
+    private int[] openElements = new int[32];
+    private int depth;
+
+    /**
+     * Offsets of the current start tag attributes, four ints per attribute:
+     * name start, name end, value start and value end.
+     */
+    private int[] attributes = new int[32];
+    private int attributeCount;
+
+    /**
+     * Start of the text being referenced instead of decoded, or -1.
+     */
+    private int referenceStart = -1;
+
+    JUnitXmlTokenizer(ByteBuffer buffer, int start, int end, SuiteContentReader content) {
+        this(buffer, start, end, content, false);
+    }
+
+    /**
+     * @param referenceText whether collected text is passed on as {@link XmlText} instead of being
+     *                      decoded; the buffer must then stay valid until the text has been used.
+     */
+    JUnitXmlTokenizer(ByteBuffer buffer, int start, int end, SuiteContentReader content, boolean referenceText) {
+        this.buffer = buffer;
+        this.position = start;
+        this.end = end;
+        this.content = content;
+        this.referenceText = referenceText;
+    }
+
+    /**
+     * Decodes element content made of text and CDATA sections that has already been validated
+     * by a tokenizer, see {@link XmlText}.
+     */
+    static void decodeContent(ByteBuffer buffer, int from, int to, StringBuilder out) {
+        try {
+            new JUnitXmlTokenizer(buffer, from, to, null).decodeContent(from, to, out);
+        } catch (UnsupportedInputException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes element content like {@link #decodeContent(ByteBuffer, int, int, StringBuilder)},
+     * writing it to {@code out} a chunk at a time so text of any length takes bounded memory.
+     */
+    static void decodeContent(ByteBuffer buffer, int from, int to, Writer out) throws IOException {
+        try {
+            new JUnitXmlTokenizer(buffer, from, to, null).decodeContent(from, to, out);
+        } catch (UnsupportedInputException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes element content made of text and CDATA sections that has already been validated by
+     * a tokenizer to {@code out} as UTF-8, see {@link XmlText}.
+     */
+    static void writeContent(ByteBuffer buffer, int from, int to, WritableByteChannel out) throws IOException {
+        try {
+            new JUnitXmlTokenizer(buffer, from, to, null).writeContent(from, to, out);
+        } catch (UnsupportedInputException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a complete document.
+     */
+    void readDocument() throws UnsupportedInputException, ParseException {
+        readProlog();
+        readStartTag();
+        readContent(false);
+        readEpilog();
+    }
+
+    /**
+     * Reads the beginning of a document up to the end of the range, which has to be the start
+     * of a chunk found by {@link #findChunkStarts}. Elements still open are kept for the chunks.
+     */
+    void readDocumentStart() throws UnsupportedInputException, ParseException {
+        readProlog();
+        readStartTag();
+        readContent(true);
+        if (depth == 0 || !content.isBetweenTestCases()) {
+            throw new UnsupportedInputException("document start does not end before a test case");
+        }
+    }
+
+    /**
+     * Reads a chunk found by {@link #findChunkStarts}, continuing the elements left open by
+     * {@code documentStart}. All but the last chunk have to leave the same elements open.
+     */
+    void readChunk(JUnitXmlTokenizer documentStart, boolean last)
+            throws UnsupportedInputException, ParseException {
+        openElements = documentStart.openElements.clone();
+        depth = documentStart.depth;
+        if (last) {
+            readContent(false);
+            readEpilog();
+        } else {
+            readContent(true);
+            if (position < end || depth != documentStart.depth || !content.isBetweenTestCases()) {
+                throw new UnsupportedInputException("chunk does not end before a test case");
+            }
+        }
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Finds offsets of {@code <testcase>} start tags splitting the range into chunks of about
+     * {@code chunkSize} bytes, the first offset being the first test case of the document.
+     * <p>
+     * Only looks at the bytes near each split. A match inside a comment, CDATA section or
+     * processing instruction leaves the previous chunk unterminated, so reading it fails
+     * instead of producing wrong results.
+     */
+    int[] findChunkStarts(int chunkSize) {
+        int[] starts = new int[16];
+        int count = 0;
+        long from = position;
+        while (from < end) {
+            int found = indexOfTestCase((int) from);
+            if (found == -1) {
+                break;
+            }
+            if (count == starts.length) {
+                int[] grown = new int[starts.length * 2];
+                System.arraycopy(starts, 0, grown, 0, starts.length);
+                starts = grown;
+            }
+            starts[count++] = found;
+            from = Math.max((long) found + 1, (long) position + (long) count * chunkSize);
+        }
+        int[] result = new int[count];
+        System.arraycopy(starts, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Finds the next {@code <testcase} that follows the end of another tag, which skips most
+     * matches inside text collected in CDATA sections.
+     */
+    private int indexOfTestCase(int from) {
+        while (true) {
+            int found = indexOf(from, "<testcase");
+            if (found == -1) {
+                return -1;
+            }
+            int previous = found - 1;
+            while (previous >= from && isWhitespace(buffer.get(previous))) {
+                previous--;
+            }
+            if (isNameTerminator(byteAt(found + 9)) && (previous < from || buffer.get(previous) == '>')) {
+                return found;
+            }
+            from = found + 1;
+        }
+    }
+
+    /**
+     * Reads the byte order mark, the XML declaration and markup up to the root element.
+     */
+    private void readProlog() throws UnsupportedInputException {
+        if (byteAt(position) == (byte) 0xef && byteAt(position + 1) == (byte) 0xbb
+                && byteAt(position + 2) == (byte) 0xbf) {
+            position += 3;
+        }
+        if (startsWith(position, "<?xml") && isWhitespace(byteAt(position + 5))) {
+            readDeclaration();
+        }
+        while (true) {
+            if (position >= end) {
+                throw new UnsupportedInputException("no root element");
+            }
+            if (!skipMisc()) {
+                break;
+            }
+        }
+        if (startsWith(position, "<!") || startsWith(position, "</")) {
+            throw new UnsupportedInputException("unexpected markup at " + position);
+        }
+    }
+
+    private void readEpilog() throws UnsupportedInputException {
+        while (position < end) {
+            if (!skipMisc()) {
+                throw new UnsupportedInputException("unexpected markup at " + position);
+            }
+        }
+    }
+
+    /**
+     * Skips whitespace, a comment or a processing instruction outside of the root element.
+     *
+     * @return {@code false} if other markup follows.
+     */
+    private boolean skipMisc() throws UnsupportedInputException {
+        byte b = buffer.get(position);
+        if (b != '<') {
+            if (!isWhitespace(b)) {
+                throw new UnsupportedInputException("text outside of the root element");
+            }
+            position++;
+        } else if (startsWith(position, "<!--")) {
+            skipPast(position + 4, "-->");
+        } else if (startsWith(position, "<?")) {
+            skipPast(position + 2, "?>");
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads elements and text until all open elements are closed.
+     *
+     * @param toEnd whether reading stops at the end of the range even if elements are still open.
+     */
+    private void readContent(boolean toEnd) throws UnsupportedInputException, ParseException {
+        while (depth > 0) {
+            if (position >= end) {
+                if (toEnd) {
+                    stopReferencing(position);
+                    return;
+                }
+                throw new UnsupportedInputException("unexpected end of input");
+            }
+            byte b = buffer.get(position);
+            if (b != '<') {
+                readText();
+            } else {
+                byte next = byteAt(position + 1);
+                if (next == '/') {
+                    readEndTag();
+                } else if (next == '!') {
+                    if (startsWith(position, "<!--")) {
+                        stopReferencing(position);
+                        skipPast(position + 4, "-->");
+                    } else if (startsWith(position, "<![CDATA[")) {
+                        readCData();
+                    } else {
+                        throw new UnsupportedInputException("unexpected markup at " + position);
+                    }
+                } else if (next == '?') {
+                    stopReferencing(position);
+                    skipPast(position + 2, "?>");
+                } else {
+                    stopReferencing(position);
+                    readStartTag();
+                }
+            }
+        }
+    }
+
+    private void readDeclaration() throws UnsupportedInputException {
+        int declarationEnd = indexOf(position, "?>");
+        if (declarationEnd == -1) {
+            throw new UnsupportedInputException("unterminated XML declaration");
+        }
+        int encoding = indexOf(position, "encoding");
+        if (encoding != -1 && encoding < declarationEnd) {
+            int p = skipWhitespace(encoding + "encoding".length());
+            if (byteAt(p) != '=') {
+                throw new UnsupportedInputException("malformed XML declaration");
+            }
+            p = skipWhitespace(p + 1);
+            byte quote = byteAt(p);
+            if (quote != '"' && quote != '\'') {
+                throw new UnsupportedInputException("malformed XML declaration");
+            }
+            int valueStart = p + 1;
+            int valueEnd = valueStart;
+            while (valueEnd < declarationEnd && buffer.get(valueEnd) != quote) {
+                valueEnd++;
+            }
+            String name = decodeAscii(valueStart, valueEnd);
+            if (!name.equalsIgnoreCase("UTF-8") && !name.equalsIgnoreCase("UTF8")
+                    && !name.equalsIgnoreCase("US-ASCII")) {
+                throw new UnsupportedInputException("unsupported encoding " + name);
+            }
+        }
+        position = declarationEnd + 2;
+    }
+
+    private void readStartTag() throws UnsupportedInputException, ParseException {
+        int nameStart = position + 1;
+        int p = nameStart;
+        while (p < end && !isNameTerminator(buffer.get(p))) {
+            p++;
+        }
+        int nameEnd = p;
+        if (nameEnd == nameStart) {
+            throw new UnsupportedInputException("malformed start tag at " + position);
+        }
+        attributeCount = 0;
+        boolean empty;
+        while (true) {
+            boolean separated = p < end && isWhitespace(buffer.get(p));
+            p = skipWhitespace(p);
+            byte b = byteAt(p);
+            if (b == '>') {
+                p++;
+                empty = false;
+                break;
+            } else if (b == '/') {
+                if (byteAt(p + 1) != '>') {
+                    throw new UnsupportedInputException("malformed start tag at " + position);
+                }
+                p += 2;
+                empty = true;
+                break;
+            } else if (!separated || b == 0) {
+                throw new UnsupportedInputException("malformed start tag at " + position);
+            }
+            p = readAttribute(p);
+        }
+        position = p;
+
+        String name = elementName(nameStart, nameEnd);
+        if (depth * 2 == openElements.length) {
+            int[] grown = new int[openElements.length * 2];
+            System.arraycopy(openElements, 0, grown, 0, openElements.length);
+            openElements = grown;
+        }
+        openElements[depth * 2] = nameStart;
+        openElements[depth * 2 + 1] = nameEnd;
+        depth++;
+        boolean wasCapturing = content.isCapturingText();
+        content.startElement(name, attributeValues);
+        if (empty) {
+            depth--;
+            content.endElement(name);
+        } else if (referenceText && !wasCapturing && content.isCapturingText()) {
+            referenceStart = position;
+        }
+    }
+
+    private int readAttribute(int p) throws UnsupportedInputException {
+        int nameStart = p;
+        while (p < end && !isNameTerminator(buffer.get(p)) && buffer.get(p) != '=') {
+            p++;
+        }
+        int nameEnd = p;
+        p = skipWhitespace(p);
+        if (nameEnd == nameStart || byteAt(p) != '=') {
+            throw new UnsupportedInputException("malformed attribute at " + nameStart);
+        }
+        p = skipWhitespace(p + 1);
+        byte quote = byteAt(p);
+        if (quote != '"' && quote != '\'') {
+            throw new UnsupportedInputException("malformed attribute at " + nameStart);
+        }
+        int valueStart = ++p;
+        while (true) {
+            if (p >= end) {
+                throw new UnsupportedInputException("unterminated attribute at " + nameStart);
+            }
+            byte b = buffer.get(p);
+            if (b == quote) {
+                break;
+            }
+            if (b == '<') {
+                throw new UnsupportedInputException("'<' in attribute at " + nameStart);
+            }
+            p++;
+        }
+        if (attributeCount * 4 == attributes.length) {
+            int[] grown = new int[attributes.length * 2];
+            System.arraycopy(attributes, 0, grown, 0, attributes.length);
+            attributes = grown;
+        }
+        int offset = attributeCount * 4;
+        attributes[offset] = nameStart;
+        attributes[offset + 1] = nameEnd;
+        attributes[offset + 2] = valueStart;
+        attributes[offset + 3] = p;
+        attributeCount++;
+        return p + 1;
+    }
+
+    private void readEndTag() throws UnsupportedInputException {
+        int tagStart = position;
+        int nameStart = position + 2;
+        int p = nameStart;
+        while (p < end && !isNameTerminator(buffer.get(p))) {
+            p++;
+        }
+        int nameEnd = p;
+        p = skipWhitespace(p);
+        if (depth == 0 || byteAt(p) != '>') {
+            throw new UnsupportedInputException("malformed end tag at " + position);
+        }
+        int openStart = openElements[depth * 2 - 2];
+        int openEnd = openElements[depth * 2 - 1];
+        if (!rangeEquals(openStart, openEnd, nameStart, nameEnd)) {
+            throw new UnsupportedInputException("mismatched end tag at " + position);
+        }
+        position = p + 1;
+        depth--;
+        if (referenceStart != -1) {
+            // nested markup would have stopped referencing, so this closes the capturing element
+            content.reference(new XmlText(buffer, referenceStart, tagStart));
+            referenceStart = -1;
+        }
+        content.endElement(elementName(nameStart, nameEnd));
+    }
+
+    private void readText() throws UnsupportedInputException {
+        int start = position;
+        int p = position;
+        boolean plain = true;
+        while (p < end) {
+            byte b = buffer.get(p);
+            if (b == '<') {
+                break;
+            }
+            if (b == '&' || b < 0 || (b < 0x20 && b != '\n' && b != '\t')) {
+                plain = false;
+            }
+            p++;
+        }
+        position = p;
+        if (referenceStart != -1) {
+            if (!plain) {
+                decode(start, p, false, true, null);
+            }
+        } else if (content.isCapturingText()) {
+            text.setLength(0);
+            if (plain) {
+                for (int i = start; i < p; i++) {
+                    text.append((char) buffer.get(i));
+                }
+            } else {
+                decode(start, p, false, true, text);
+            }
+            content.characters(text);
+        } else if (!plain) {
+            // validate entities and encoding even if the text is not needed
+            decode(start, p, false, true, null);
+        }
+    }
+
+    private void readCData() throws UnsupportedInputException {
+        int start = position + "<![CDATA[".length();
+        int cdataEnd = indexOf(start, "]]>");
+        if (cdataEnd == -1) {
+            throw new UnsupportedInputException("unterminated CDATA section at " + position);
+        }
+        position = cdataEnd + 3;
+        if (referenceStart != -1) {
+            decode(start, cdataEnd, false, false, null);
+        } else if (content.isCapturingText()) {
+            text.setLength(0);
+            decode(start, cdataEnd, false, false, text);
+            content.characters(text);
+        }
+    }
+
+    /**
+     * Stops referencing text at {@code at} because markup other than CDATA follows: the text read
+     * so far is decoded and passed on, the rest of the element is read as usual.
+     */
+    private void stopReferencing(int at) throws UnsupportedInputException {
+        if (referenceStart != -1) {
+            text.setLength(0);
+            decodeContent(referenceStart, at, text);
+            referenceStart = -1;
+            content.characters(text);
+        }
+    }
+
+    private void decodeContent(int from, int to, StringBuilder out) throws UnsupportedInputException {
+        int i = from;
+        while (i < to) {
+            int markup = i;
+            while (markup < to && buffer.get(markup) != '<') {
+                markup++;
+            }
+            decode(i, markup, false, true, out);
+            if (markup == to) {
+                break;
+            }
+            int cdataStart = markup + "<![CDATA[".length();
+            int cdataEnd = indexOf(cdataStart, "]]>");
+            if (!startsWith(markup, "<![CDATA[") || cdataEnd == -1 || cdataEnd >= to) {
+                throw new UnsupportedInputException("unexpected markup at " + markup);
+            }
+            decode(cdataStart, cdataEnd, false, false, out);
+            i = cdataEnd + 3;
+        }
+    }
+
+    private void decodeContent(int from, int to, Writer out) throws UnsupportedInputException, IOException {
+        int i = from;
+        while (i < to) {
+            int markup = i;
+            while (markup < to && buffer.get(markup) != '<') {
+                markup++;
+            }
+            decodeChunks(i, markup, true, out);
+            if (markup == to) {
+                break;
+            }
+            int cdataStart = markup + "<![CDATA[".length();
+            int cdataEnd = indexOf(cdataStart, "]]>");
+            if (!startsWith(markup, "<![CDATA[") || cdataEnd == -1 || cdataEnd >= to) {
+                throw new UnsupportedInputException("unexpected markup at " + markup);
+            }
+            decodeChunks(cdataStart, cdataEnd, false, out);
+            i = cdataEnd + 3;
+        }
+    }
+
+    /**
+     * Decodes text like {@link #decode} in chunks of at most {@value #CHUNK_SIZE} bytes.
+     */
+    private void decodeChunks(int from, int to, boolean entities, Writer out)
+            throws UnsupportedInputException, IOException {
+        char[] chars = null;
+        int i = from;
+        while (i < to) {
+            int chunkEnd = chunkEnd(i, to, entities);
+            text.setLength(0);
+            decode(i, chunkEnd, false, entities, text);
+            if (chars == null) {
+                chars = new char[Math.min(CHUNK_SIZE, to - from)];
+            }
+            text.getChars(0, text.length(), chars, 0);
+            out.write(chars, 0, text.length());
+            i = chunkEnd;
+        }
+    }
+
+    /**
+     * @return end of the chunk starting at {@code from}, moved back so that it does not split a
+     * character, a reference or a carriage return and line feed pair.
+     */
+    private int chunkEnd(int from, int to, boolean entities) {
+        if (to - from <= CHUNK_SIZE) {
+            return to;
+        }
+        int end = from + CHUNK_SIZE;
+        while ((buffer.get(end) & 0xc0) == 0x80) {
+            end--;
+        }
+        if (entities) {
+            for (int i = end - 1; i > end - MAX_REFERENCE_LENGTH; i--) {
+                byte b = buffer.get(i);
+                if (b == ';') {
+                    break;
+                } else if (b == '&') {
+                    end = i;
+                    break;
+                }
+            }
+        }
+        if (buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private void writeContent(int from, int to, WritableByteChannel out)
+            throws UnsupportedInputException, IOException {
+        int i = from;
+        while (i < to) {
+            int markup = i;
+            while (markup < to && buffer.get(markup) != '<') {
+                markup++;
+            }
+            writeText(i, markup, true, out);
+            if (markup == to) {
+                break;
+            }
+            int cdataStart = markup + "<![CDATA[".length();
+            int cdataEnd = indexOf(cdataStart, "]]>");
+            if (!startsWith(markup, "<![CDATA[") || cdataEnd == -1 || cdataEnd >= to) {
+                throw new UnsupportedInputException("unexpected markup at " + markup);
+            }
+            writeText(cdataStart, cdataEnd, false, out);
+            i = cdataEnd + 3;
+        }
+    }
+
+    /**
+     * Writes text line by line: runs of lines without references or carriage returns are written
+     * as slices of the buffer, other lines are decoded like {@link #decode} and encoded again.
+     */
+    private void writeText(int from, int to, boolean entities, WritableByteChannel out)
+            throws UnsupportedInputException, IOException {
+        int run = from;
+        int line = from;
+        while (line < to) {
+            int lineEnd = line;
+            boolean plain = true;
+            while (lineEnd < to) {
+                byte b = buffer.get(lineEnd++);
+                if (b == '\n') {
+                    break;
+                }
+                plain &= b != '\r' && (b != '&' || !entities);
+            }
+            if (!plain) {
+                write(run, line, out);
+                text.setLength(0);
+                decode(line, lineEnd, false, entities, text);
+                write(ByteBuffer.wrap(text.toString().getBytes(UTF_8)), out);
+                run = lineEnd;
+            }
+            line = lineEnd;
+        }
+        write(run, to, out);
+    }
+
+    private void write(int from, int to, WritableByteChannel out) throws IOException {
+        if (from < to) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(to);
+            slice.position(from);
+            write(slice, out);
+        }
+    }
+
+    private static void write(ByteBuffer bytes, WritableByteChannel out) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Decodes UTF-8 bytes normalizing line ends the way XML parsers do.
+     *
+     * @param attribute whether the bytes are an attribute value, which turns whitespace into spaces.
+     * @param entities  whether entity and character references are expanded.
+     * @param out       receives the text, or {@code null} to only validate the bytes.
+     */
+    private void decode(int from, int to, boolean attribute, boolean entities, StringBuilder out)
+            throws UnsupportedInputException {
+        int i = from;
+        while (i < to) {
+            int b = buffer.get(i);
+            if (b >= 0) {
+                if (b == '&' && entities) {
+                    i = readReference(i, to, out);
+                    continue;
+                } else if (b == '\r') {
+                    if (i + 1 < to && buffer.get(i + 1) == '\n') {
+                        i++;
+                    }
+                    if (out != null) {
+                        out.append(attribute ? ' ' : '\n');
+                    }
+                } else if (b == '\n' || b == '\t') {
+                    if (out != null) {
+                        out.append(attribute ? ' ' : (char) b);
+                    }
+                } else if (b < 0x20) {
+                    throw new UnsupportedInputException("illegal character at " + i);
+                } else if (out != null) {
+                    out.append((char) b);
+                }
+                i++;
+            } else {
+                i = decodeMultiByte(i, to, out);
+            }
+        }
+    }
+
+    private int decodeMultiByte(int i, int to, StringBuilder out) throws UnsupportedInputException {
+        int b = buffer.get(i) & 0xff;
+        int length;
+        int codePoint;
+        if (b >= 0xc2 && b <= 0xdf) {
+            length = 2;
+            codePoint = b & 0x1f;
+        } else if (b >= 0xe0 && b <= 0xef) {
+            length = 3;
+            codePoint = b & 0x0f;
+        } else if (b >= 0xf0 && b <= 0xf4) {
+            length = 4;
+            codePoint = b & 0x07;
+        } else {
+            throw new UnsupportedInputException("malformed UTF-8 at " + i);
+        }
+        if (i + length > to) {
+            throw new UnsupportedInputException("malformed UTF-8 at " + i);
+        }
+        for (int k = 1; k < length; k++) {
+            int next = buffer.get(i + k) & 0xff;
+            if ((next & 0xc0) != 0x80) {
+                throw new UnsupportedInputException("malformed UTF-8 at " + i);
+            }
+            codePoint = (codePoint << 6) | (next & 0x3f);
+        }
+        if ((length == 3 && (codePoint < 0x800 || (codePoint >= 0xd800 && codePoint <= 0xdfff)))
+                || (length == 4 && (codePoint < 0x10000 || codePoint > 0x10ffff))
+                || codePoint == 0xfffe || codePoint == 0xffff) {
+            throw new UnsupportedInputException("malformed UTF-8 at " + i);
+        }
+        if (out != null) {
+            out.appendCodePoint(codePoint);
+        }
+        return i + length;
+    }
+
+    private int readReference(int i, int to, StringBuilder out) throws UnsupportedInputException {
+        int semicolon = i + 1;
+        while (semicolon < to && semicolon - i <= 10 && buffer.get(semicolon) != ';') {
+            semicolon++;
+        }
+        if (semicolon >= to || buffer.get(semicolon) != ';') {
+            throw new UnsupportedInputException("malformed reference at " + i);
+        }
+        int nameStart = i + 1;
+        int codePoint;
+        if (rangeEquals(nameStart, semicolon, "lt")) {
+            codePoint = '<';
+        } else if (rangeEquals(nameStart, semicolon, "gt")) {
+            codePoint = '>';
+        } else if (rangeEquals(nameStart, semicolon, "amp")) {
+            codePoint = '&';
+        } else if (rangeEquals(nameStart, semicolon, "quot")) {
+            codePoint = '"';
+        } else if (rangeEquals(nameStart, semicolon, "apos")) {
+            codePoint = '\'';
+        } else if (semicolon - nameStart >= 2 && buffer.get(nameStart) == '#') {
+            boolean hex = buffer.get(nameStart + 1) == 'x';
+            int digit = hex ? nameStart + 2 : nameStart + 1;
+            if (digit == semicolon) {
+                throw new UnsupportedInputException("malformed reference at " + i);
+            }
+            codePoint = 0;
+            for (; digit < semicolon; digit++) {
+                int value = Character.digit((char) buffer.get(digit), hex ? 16 : 10);
+                if (value < 0) {
+                    throw new UnsupportedInputException("malformed reference at " + i);
+                }
+                codePoint = codePoint * (hex ? 16 : 10) + value;
+            }
+            if (!isXmlChar(codePoint)) {
+                throw new UnsupportedInputException("illegal character reference at " + i);
+            }
+        } else {
+            throw new UnsupportedInputException("unknown entity at " + i);
+        }
+        if (out != null) {
+            out.appendCodePoint(codePoint);
+        }
+        return semicolon + 1;
+    }
+
+    private String elementName(int start, int end) throws UnsupportedInputException {
+        for (String name : KNOWN_NAMES) {
+            if (rangeEquals(start, end, name)) {
+                return name;
+            }
+        }
+        StringBuilder name = new StringBuilder(end - start);
+        decode(start, end, false, false, name);
+        return name.toString();
+    }
+
+    private String decodeAscii(int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            value.append((char) (buffer.get(i) & 0xff));
+        }
+        return value.toString();
+    }
+
+    private void skipPast(int from, String terminator) throws UnsupportedInputException {
+        int found = indexOf(from, terminator);
+        if (found == -1) {
+            throw new UnsupportedInputException("missing '" + terminator + "' after " + from);
+        }
+        position = found + terminator.length();
+    }
+
+    private int indexOf(int from, String pattern) {
+        byte first = (byte) pattern.charAt(0);
+        int last = end - pattern.length();
+        for (int i = from; i <= last; i++) {
+            if (buffer.get(i) == first && startsWith(i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int at, String pattern) {
+        if (at + pattern.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if (buffer.get(at + i) != (byte) pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean rangeEquals(int start, int end, String ascii) {
+        return end - start == ascii.length() && startsWith(start, ascii);
+    }
+
+    private boolean rangeEquals(int start, int end, int otherStart, int otherEnd) {
+        if (end - start != otherEnd - otherStart) {
+            return false;
+        }
+        for (int i = 0; i < end - start; i++) {
+            if (buffer.get(start + i) != buffer.get(otherStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int p) {
+        while (p < end && isWhitespace(buffer.get(p))) {
+            p++;
+        }
+        return p;
+    }
+
+    private byte byteAt(int p) {
+        return p < end ? buffer.get(p) : 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isNameTerminator(byte b) {
+        return isWhitespace(b) || b == '>' || b == '/' || b == '<' || b == '"' || b == '\'';
+    }
+
+    private static boolean isXmlChar(int codePoint) {
+        return codePoint == 0x9 || codePoint == 0xa || codePoint == 0xd
+                || (codePoint >= 0x20 && codePoint <= 0xd7ff)
+                || (codePoint >= 0xe000 && codePoint <= 0xfffd)
+                || (codePoint >= 0x10000 && codePoint <= 0x10ffff);
+    }
+
+    /**
+     * Decodes values of the current start tag on request.
+     */
+    private class AttributeValues implements SuiteContentReader.Attributes {
+        private final StringBuilder value = new StringBuilder();
+
+        @Override
+        public String getValue(String name) {
+            for (int i = 0; i < attributeCount; i++) {
+                int offset = i * 4;
+                if (rangeEquals(attributes[offset], attributes[offset + 1], name)) {
+                    value.setLength(0);
+                    try {
+                        decode(attributes[offset + 2], attributes[offset + 3], true, true, value);
+                    } catch (UnsupportedInputException e) {
+                        throw new UnsupportedAttributeException(e);
+                    }
+                    return value.toString();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Thrown when the input uses XML features this tokenizer does not handle.
+     */
+    static class UnsupportedInputException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedInputException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Carries {@link UnsupportedInputException} out of {@link AttributeValues#getValue}.
+     */
+    static class UnsupportedAttributeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedAttributeException(UnsupportedInputException cause) {
+            super(cause);
+        }
+    }
+}
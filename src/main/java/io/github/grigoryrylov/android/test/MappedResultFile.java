@@ -0,0 +1,85 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a result file.
+ * <p>
+ * {@link #close()} unmaps the file right away instead of waiting for the garbage collector, so
+ * nothing may read the buffer, or text referring to it, after the mapping is closed.
+ */
+class MappedResultFile implements Closeable {
+    private MappedByteBuffer buffer;
+
+    private MappedResultFile(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    static MappedResultFile map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return new MappedResultFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int size() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Frees a direct or mapped buffer. Uses {@code Unsafe.invokeCleaner} on Java 9 and later and
+     * the buffer cleaner on Java 8; if neither is accessible the buffer is left to the garbage collector.
+     */
+    static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Java 8, try the cleaner below
+        } catch (Exception e) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // left to the garbage collector
+        }
+    }
+}
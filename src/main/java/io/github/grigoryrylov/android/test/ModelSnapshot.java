@@ -0,0 +1,301 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary snapshot of a loaded {@link AllTestResultsExt}, so that several reports can be
+ * rendered from one test run without reading its result files again.
+ * <p>
+ * The snapshot keeps classes with their output and tests with their failures; names, devices,
+ * flavors and failure messages, which repeat a lot, are written once in a string table. Each
+ * distinct stack trace is streamed where it first occurs and referred to by its index after
+ * that. Packages and per-device and per-variant results are rebuilt on load through the same
+ * model calls the result file loader makes, so they are identical to those of the snapshotted
+ * model. A CRC of the content detects damaged files.
+ */
+public final class ModelSnapshot {
+    private static final int MAGIC = 0x54525331;
+    private static final int VERSION = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ModelSnapshot() {
+    }
+
+    public static void write(AllTestResultsExt model, File snapshotFile) throws IOException {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIds = new HashMap<>();
+        for (PackageTestResultsExt packageResults : model.getPackages()) {
+            for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                addString(classResults.getName(), strings, stringIds);
+                for (TestResultExt test : classResults.getResults()) {
+                    addString(test.getName(), strings, stringIds);
+                    addString(test.getDevice(), strings, stringIds);
+                    addString(test.getProject(), strings, stringIds);
+                    addString(test.getFlavor(), strings, stringIds);
+                    for (TestResultExt.TestFailure failure : test.getFailures()) {
+                        addString(failure.getMessage(), strings, stringIds);
+                        addString(failure.getExceptionType(), strings, stringIds);
+                        addString(failure.getScreenshotPath(), strings, stringIds);
+                    }
+                }
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(snapshotFile), 64 * 1024), crc));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeText(out, string);
+            }
+            int classCount = 0;
+            for (PackageTestResultsExt packageResults : model.getPackages()) {
+                classCount += packageResults.getClasses().size();
+            }
+            out.writeInt(classCount);
+            Map<Integer, Integer> traceIndexes = new HashMap<>();
+            for (PackageTestResultsExt packageResults : model.getPackages()) {
+                for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                    writeClass(out, classResults, stringIds, traceIndexes);
+                }
+            }
+            out.writeLong(crc.getValue());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @throws IOException if the file is not a snapshot of this version or is damaged.
+     */
+    public static AllTestResultsExt read(File snapshotFile) throws IOException {
+        return read(snapshotFile, new AllTestResultsExt());
+    }
+
+    /**
+     * @param model empty model the snapshot is loaded into, configured like the models loaded
+     *              from result files, see {@link TestReportExt#newModel}.
+     * @return the model.
+     * @throws IOException if the file is not a snapshot of this version or is damaged.
+     */
+    static AllTestResultsExt read(File snapshotFile, AllTestResultsExt model) throws IOException {
+        long limit = snapshotFile.length();
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile), 64 * 1024), crc));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("'%s' is not a test results snapshot.", snapshotFile));
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported snapshot version %d in '%s'.", version,
+                        snapshotFile));
+            }
+            String[] strings = new String[readCount(in, limit)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readText(in, limit);
+            }
+            int classCount = readCount(in, limit);
+            List<Integer> traceIds = new ArrayList<>();
+            for (int i = 0; i < classCount; i++) {
+                readClass(in, limit, model, strings, traceIds);
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected || in.read() != -1) {
+                throw new IOException(String.format("Snapshot '%s' is damaged.", snapshotFile));
+            }
+            return model;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(String.format("Snapshot '%s' is damaged.", snapshotFile), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param traceIndexes indexes in the snapshot of the traces written so far, by their id in the
+     *                     {@link FailureTextStore} of the model.
+     */
+    private static void writeClass(DataOutputStream out, ClassTestResultsExt classResults,
+                                   Map<String, Integer> stringIds, Map<Integer, Integer> traceIndexes)
+            throws IOException {
+        out.writeInt(stringIds.get(classResults.getName()));
+        writeText(out, classResults.getStandardOutput().toString());
+        writeText(out, classResults.getStandardError().toString());
+        out.writeInt(classResults.getResults().size());
+        for (TestResultExt test : classResults.getResults()) {
+            out.writeInt(stringIds.get(test.getName()));
+            out.writeLong(test.getDuration());
+            out.writeInt(stringId(test.getDevice(), stringIds));
+            out.writeInt(stringId(test.getProject(), stringIds));
+            out.writeInt(stringId(test.getFlavor(), stringIds));
+            out.writeBoolean(test.isIgnored());
+            out.writeInt(test.getFailures().size());
+            for (TestResultExt.TestFailure failure : test.getFailures()) {
+                out.writeInt(stringId(failure.getMessage(), stringIds));
+                writeStackTrace(out, failure, traceIndexes);
+                out.writeInt(stringId(failure.getExceptionType(), stringIds));
+                out.writeInt(stringId(failure.getScreenshotPath(), stringIds));
+            }
+        }
+    }
+
+    /**
+     * @param traceIds ids in the {@link FailureTextStore} of the model of the traces read so far, by
+     *                 their index in the snapshot.
+     */
+    private static void readClass(DataInputStream in, long limit, AllTestResultsExt model, String[] strings,
+                                  List<Integer> traceIds) throws IOException {
+        String className = strings[in.readInt()];
+        ClassTestResultsExt classResults = model.addTestClass(className);
+        String standardOutput = readText(in, limit);
+        if (!standardOutput.isEmpty()) {
+            classResults.addStandardOutput(standardOutput);
+        }
+        String standardError = readText(in, limit);
+        if (!standardError.isEmpty()) {
+            classResults.addStandardError(standardError);
+        }
+        int testCount = readCount(in, limit);
+        for (int i = 0; i < testCount; i++) {
+            String testName = strings[in.readInt()];
+            long duration = in.readLong();
+            String device = string(strings, in.readInt());
+            String project = string(strings, in.readInt());
+            String flavor = string(strings, in.readInt());
+            boolean ignored = in.readBoolean();
+            TestResultExt test = model.addTest(className, testName, duration, device, project, flavor);
+            int failureCount = readCount(in, limit);
+            for (int k = 0; k < failureCount; k++) {
+                String message = string(strings, in.readInt());
+                int stackTraceId = readStackTrace(in, limit, model, traceIds);
+                String exceptionType = string(strings, in.readInt());
+                String screenshotPath = string(strings, in.readInt());
+                test.addFailure(message, stackTraceId, exceptionType, device, project, flavor, screenshotPath);
+            }
+            if (ignored) {
+                test.ignored();
+            }
+        }
+    }
+
+    /**
+     * Writes the index of the trace, followed by its text if it is the first failure with it.
+     */
+    private static void writeStackTrace(DataOutputStream out, TestResultExt.TestFailure failure,
+                                        Map<Integer, Integer> traceIndexes) throws IOException {
+        TextArena.Text stackTrace = failure.getStackTraceText();
+        if (stackTrace == null) {
+            out.writeInt(-1);
+            return;
+        }
+        Integer index = traceIndexes.get(failure.getStackTraceId());
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+        index = traceIndexes.size();
+        traceIndexes.put(failure.getStackTraceId(), index);
+        out.writeInt(index);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(bytes, UTF_8);
+        stackTrace.writeTo(writer);
+        writer.flush();
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * @return id of the trace in the {@link FailureTextStore} of the model.
+     */
+    private static int readStackTrace(DataInputStream in, long limit, AllTestResultsExt model,
+                                      List<Integer> traceIds) throws IOException {
+        int index = in.readInt();
+        if (index == -1) {
+            return model.getFailureTexts().add(null);
+        }
+        if (index < traceIds.size()) {
+            return traceIds.get(index);
+        }
+        if (index != traceIds.size()) {
+            throw new IOException("invalid stack trace index " + index);
+        }
+        int id = model.getFailureTexts().add(readText(in, limit));
+        traceIds.add(id);
+        return id;
+    }
+
+    private static void addString(String string, List<String> strings, Map<String, Integer> stringIds) {
+        if (string != null && !stringIds.containsKey(string)) {
+            stringIds.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static int stringId(String string, Map<String, Integer> stringIds) {
+        return string != null ? stringIds.get(string) : -1;
+    }
+
+    private static String string(String[] strings, int id) {
+        return id != -1 ? strings[id] : null;
+    }
+
+    /**
+     * Writes UTF-8 text with an int length, {@link DataOutputStream#writeUTF} is limited to 64 KB.
+     */
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = text.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readText(DataInputStream in, long limit) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > limit) {
+            throw new IOException("invalid text length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads a count of items, each taking at least one byte of the {@code limit} bytes of the file.
+     */
+    private static int readCount(DataInputStream in, long limit) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > limit) {
+            throw new IOException("invalid count " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.grigoryrylov.android.test;
+
+import java.util.Map;
+
+/**
+ * Merges events of a result file into {@link AllTestResultsExt}.
+ */
+class ModelSuiteHandler implements TestSuiteHandler {
+    private final AllTestResultsExt model;
+    private final Map<String, String> screenshotMap;
+    /** Properties of the test cases before the first properties of a file, as of an empty block. */
+    private String deviceName = "";
+    private String projectName = "";
+    private String flavorName = "";
+    private TestResultExt currentTest;
+    private ClassTestResultsExt suiteResults;
+
+    ModelSuiteHandler(AllTestResultsExt model, Map<String, String> screenshotMap) {
+        this.model = model;
+        this.screenshotMap = screenshotMap;
+    }
+
+    @Override
+    public void onTestSuite(String suiteName) {
+        suiteResults = model.addTestClass(suiteName);
+    }
+
+    @Override
+    public void onProperties(String deviceName, String projectName, String flavorName) {
+        this.deviceName = deviceName;
+        this.projectName = projectName;
+        this.flavorName = flavorName;
+    }
+
+    @Override
+    public void onTestCase(String className, String testName, long duration) {
+        currentTest = model.addTest(className, testName, duration, deviceName, projectName, flavorName);
+    }
+
+    @Override
+    public void onFailure(String message, CharSequence stackTrace) {
+        currentTest.addFailure(message, stackTrace, null, deviceName, projectName, flavorName,
+                getScreenshotByClass(currentTest.getClassResults().getName(), currentTest.getName()));
+    }
+
+    @Override
+    public void onSkippedTestCase(String className, String testName) {
+        TestResultExt ignoredResult = model.addTest(className, testName, 0, deviceName, projectName, flavorName);
+        ignoredResult.ignored();
+        currentTest = null;
+    }
+
+    @Override
+    public void onStandardOutput(CharSequence text) {
+        suiteResults.addStandardOutput(text);
+    }
+
+    @Override
+    public void onStandardError(CharSequence text) {
+        suiteResults.addStandardError(text);
+    }
+
+    private String getScreenshotByClass(String className, String testName) {
+        String path = screenshotMap.get(className + '#' + testName);
+        return path != null ? path : "";
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Copies what is written to {@link System#out} and {@link System#err} during a test run into the
+ * report. Text is buffered per thread and assigned to the class of the test running on the
+ * writing thread; text written between two tests belongs to the class of the next one, like the
+ * output of a class level setup does.
+ */
+class OutputCapture {
+    private final TestEventRecorder recorder;
+    private final ThreadLocal<String> className = new ThreadLocal<>();
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+    private CapturingStream out;
+    private CapturingStream err;
+
+    OutputCapture(TestEventRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    void start() {
+        originalOut = System.out;
+        originalErr = System.err;
+        out = new CapturingStream(originalOut);
+        err = new CapturingStream(originalErr);
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+    }
+
+    /**
+     * Restores the original streams, text of the calling thread not yet assigned goes to the class
+     * of its last test.
+     */
+    void stop() {
+        System.out.flush();
+        System.err.flush();
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        String lastClassName = className.get();
+        if (lastClassName != null) {
+            flush(lastClassName);
+        }
+        className.remove();
+    }
+
+    void testStarted(String className) {
+        this.className.set(className);
+        flush(className);
+    }
+
+    void testFinished(String className) {
+        flush(className);
+    }
+
+    private void flush(String className) {
+        System.out.flush();
+        System.err.flush();
+        String text = out.drain();
+        if (text != null) {
+            recorder.addOutput(className, text, false);
+        }
+        text = err.drain();
+        if (text != null) {
+            recorder.addOutput(className, text, true);
+        }
+    }
+
+    private static class CapturingStream extends OutputStream {
+        private final PrintStream original;
+        private final ThreadLocal<ByteArrayOutputStream> buffer = new ThreadLocal<ByteArrayOutputStream>() {
+            @Override
+            protected ByteArrayOutputStream initialValue() {
+                return new ByteArrayOutputStream();
+            }
+        };
+
+        CapturingStream(PrintStream original) {
+            this.original = original;
+        }
+
+        @Override
+        public void write(int b) {
+            original.write(b);
+            buffer.get().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            original.write(b, off, len);
+            buffer.get().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            original.flush();
+        }
+
+        /**
+         * @return text buffered by the calling thread or {@code null} if there is none.
+         */
+        String drain() {
+            ByteArrayOutputStream bytes = buffer.get();
+            if (bytes.size() == 0) {
+                return null;
+            }
+            String text = bytes.toString();
+            bytes.reset();
+            return text;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * Standard output or error of a class, written to a UTF-8 text file in the report directory
+ * while the results are loaded instead of being kept in memory. Text still in a result file is
+ * copied from its bytes, see {@link XmlText#writeTo}.
+ */
+final class OutputFile {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private long size;
+
+    OutputFile(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of bytes written.
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Appends the text, the first text replaces a file left by an earlier report.
+     */
+    void append(CharSequence text) {
+        FileOutputStream outputStream = null;
+        try {
+            if (size == 0 && !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException(String.format("Could not create '%s'.", file.getParentFile()));
+            }
+            outputStream = new FileOutputStream(file, size > 0);
+            FileChannel channel = outputStream.getChannel();
+            if (text instanceof XmlText) {
+                ((XmlText) text).writeTo(channel);
+            } else {
+                ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(UTF_8));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            size = channel.size();
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not write output to '%s'.", file), e);
+        } finally {
+            try {
+                Closeables.close(outputStream, true /* swallowIOException */);
+            } catch (IOException e) {
+                // cannot happen
+            }
+        }
+    }
+
+    /**
+     * @return the text written so far, read back from the file.
+     */
+    String read() {
+        if (size == 0) {
+            return "";
+        }
+        try {
+            return new String(Files.readAllBytes(file.toPath()), UTF_8);
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not read output from '%s'.", file), e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.grigoryrylov.android.test;
 
+import java.io.File;
 import java.util.Collection;
 import java.util.Map;
 import java.util.TreeMap;
@@ -10,11 +11,20 @@ import java.util.TreeMap;
 public class PackageTestResultsExt extends CompositeTestResultsExt {
     private static final String DEFAULT_PACKAGE = "default-package";
     private final String name;
+    private final AllTestResultsExt model;
     private final Map<String, ClassTestResultsExt> classes = new TreeMap<>();
 
     public PackageTestResultsExt(String name, AllTestResultsExt model) {
         super(model);
-        this.name = name.isEmpty() ? DEFAULT_PACKAGE : name;
+        this.name = getName(name);
+        this.model = model;
+    }
+
+    /**
+     * @return name of the results of the package, see {@link AllTestResultsExt#getPackageName}.
+     */
+    static String getName(String packageName) {
+        return packageName.isEmpty() ? DEFAULT_PACKAGE : packageName;
     }
 
     @Override
@@ -27,6 +37,26 @@ public class PackageTestResultsExt extends CompositeTestResultsExt {
         return name;
     }
 
+    SymbolTable getSymbols() {
+        return model.getSymbols();
+    }
+
+    TextArena getTextArena() {
+        return model.getTextArena();
+    }
+
+    File getOutputDir() {
+        return model.getOutputDir();
+    }
+
+    FailureTextStore getFailureTexts() {
+        return model.getFailureTexts();
+    }
+
+    boolean isAggregationDeferred() {
+        return model.isAggregationDeferred();
+    }
+
     public Collection<ClassTestResultsExt> getClasses() {
         return classes.values();
     }
@@ -34,6 +64,9 @@ public class PackageTestResultsExt extends CompositeTestResultsExt {
     public TestResultExt addTest(String className, String testName, long duration,
                                  String device, String project, String flavor) {
         ClassTestResultsExt classResults = addClass(className);
+        if (isAggregationDeferred()) {
+            return classResults.addTest(testName, duration, device, project, flavor);
+        }
         TestResultExt testResult = addTest(
                 classResults.addTest(testName, duration, device, project, flavor));
 
@@ -8,6 +8,9 @@ import java.util.Map;
 
 /**
  * Created by grishberg on 08.04.18.
+ * <p>
+ * Keeps the results and tabs of the page being rendered, so each page gets a renderer of its own;
+ * pages rendered in parallel share only the model, which they read.
  */
 abstract class PageRendererExt<T extends CompositeTestResultsExt> extends TabbedPageRenderer<T> {
     private T results;
@@ -0,0 +1,47 @@
+package io.github.grigoryrylov.android.test;
+
+/**
+ * Parsers available for reading JUnit XML result files.
+ */
+public enum ParserType {
+    /**
+     * Builds a full W3C DOM tree for each file.
+     */
+    DOM,
+    /**
+     * Streams the file with StAX, never holding the whole tree in memory.
+     */
+    STAX,
+    /**
+     * Scans the file bytes with a tokenizer specialized for JUnit XML, files it does not
+     * understand are read with {@link #STAX}.
+     */
+    FAST;
+
+    /**
+     * @param captureLimit maximum number of characters kept of each failure body and output
+     *                     element, 0 for no limit.
+     */
+    SuiteParser newParser(XmlParserContext context, int captureLimit) {
+        switch (this) {
+            case DOM:
+                DomSuiteParser domParser = new DomSuiteParser(context);
+                domParser.setCaptureLimit(captureLimit);
+                return domParser;
+            case STAX:
+                return newStaxParser(context, captureLimit);
+            case FAST:
+                FastSuiteParser fastParser = new FastSuiteParser(newStaxParser(context, captureLimit));
+                fastParser.setCaptureLimit(captureLimit);
+                return fastParser;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private static StaxSuiteParser newStaxParser(XmlParserContext context, int captureLimit) {
+        StaxSuiteParser parser = new StaxSuiteParser(context);
+        parser.setCaptureLimit(captureLimit);
+        return parser;
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * JUnit 4 listener that builds the report from the tests of the run it is added to and generates
+ * it when the run finishes, without writing and parsing result files. Requires JUnit 4.12 or later.
+ * <pre>
+ * JUnitCore core = new JUnitCore();
+ * core.addListener(new ReportRunListener(new TestReportExt(resultDir, reportDir, screenshotMap)));
+ * </pre>
+ * The result directory of the report is not read.
+ */
+@RunListener.ThreadSafe
+public class ReportRunListener extends RunListener {
+    private final TestEventRecorder recorder;
+    private boolean captureOutput;
+    private OutputCapture outputCapture;
+
+    public ReportRunListener(TestReportExt report) {
+        recorder = new TestEventRecorder(report);
+    }
+
+    /**
+     * Enables copying what tests write to {@link System#out} and {@link System#err} into the
+     * report, off by default. Set it before the run starts.
+     */
+    public void setCaptureOutput(boolean captureOutput) {
+        this.captureOutput = captureOutput;
+    }
+
+    @Override
+    public void testRunStarted(Description description) {
+        if (captureOutput) {
+            outputCapture = new OutputCapture(recorder);
+            outputCapture.start();
+        }
+    }
+
+    @Override
+    public void testRunFinished(Result result) {
+        if (outputCapture != null) {
+            outputCapture.stop();
+            outputCapture = null;
+        }
+        recorder.generateReport();
+    }
+
+    @Override
+    public void testStarted(Description description) {
+        if (outputCapture != null) {
+            outputCapture.testStarted(description.getClassName());
+        }
+        recorder.testStarted(description);
+    }
+
+    @Override
+    public void testFinished(Description description) {
+        if (outputCapture != null) {
+            outputCapture.testFinished(description.getClassName());
+        }
+        recorder.testFinished(description, description.getClassName(), getTestName(description));
+    }
+
+    @Override
+    public void testFailure(Failure failure) {
+        Description description = failure.getDescription();
+        recorder.testFailed(description, description.getClassName(), getTestName(description),
+                failure.getException());
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        recorder.testAborted(failure.getDescription());
+    }
+
+    @Override
+    public void testIgnored(Description description) {
+        recorder.testSkipped(description.getClassName(), getTestName(description));
+    }
+
+    /**
+     * @return the method name, or the display name for descriptions of a whole class.
+     */
+    private static String getTestName(Description description) {
+        String methodName = description.getMethodName();
+        return methodName != null ? methodName : description.getDisplayName();
+    }
+}
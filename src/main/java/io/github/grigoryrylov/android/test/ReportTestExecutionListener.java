@@ -0,0 +1,131 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.reporting.ReportEntry;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+import java.util.Map;
+
+/**
+ * JUnit Platform listener that builds the report from the executed tests and generates it when
+ * the test plan has finished, without writing and parsing result files. Requires
+ * junit-platform-launcher 1.3 or later.
+ * <p>
+ * Tests are reported under the class of their method or of their nearest enclosing class, with
+ * their legacy reporting name. Aborted tests are reported as skipped. Captured output published
+ * as {@code stdout} and {@code stderr} report entries is added to the class of the test.
+ * The result directory of the report is not read.
+ */
+public class ReportTestExecutionListener implements TestExecutionListener {
+    private static final String UNKNOWN_CLASS = "UnknownClass";
+
+    private final TestEventRecorder recorder;
+    private volatile TestPlan testPlan;
+
+    public ReportTestExecutionListener(TestReportExt report) {
+        recorder = new TestEventRecorder(report);
+    }
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        this.testPlan = testPlan;
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        recorder.generateReport();
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (testIdentifier.isTest()) {
+            recorder.testStarted(testIdentifier.getUniqueId());
+        }
+    }
+
+    @Override
+    public void executionSkipped(TestIdentifier testIdentifier, String reason) {
+        if (testIdentifier.isTest()) {
+            recorder.testSkipped(getClassName(testIdentifier), getTestName(testIdentifier));
+            return;
+        }
+        for (TestIdentifier descendant : testPlan.getDescendants(testIdentifier)) {
+            if (descendant.isTest()) {
+                recorder.testSkipped(getClassName(descendant), getTestName(descendant));
+            }
+        }
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        String uniqueId = testIdentifier.getUniqueId();
+        Throwable throwable = testExecutionResult.getThrowable().orElse(null);
+        switch (testExecutionResult.getStatus()) {
+            case FAILED:
+                if (throwable == null) {
+                    throwable = new AssertionError("Failed without a reported cause");
+                }
+                if (testIdentifier.isTest() || testIdentifier.getSource().orElse(null) instanceof ClassSource) {
+                    // a failed class is reported as a failed test, like a failing class level setup
+                    recorder.testFailed(uniqueId, getClassName(testIdentifier), getTestName(testIdentifier),
+                            throwable);
+                }
+                break;
+            case ABORTED:
+                recorder.testAborted(uniqueId);
+                break;
+            default:
+                break;
+        }
+        if (testIdentifier.isTest()) {
+            recorder.testFinished(uniqueId, getClassName(testIdentifier), getTestName(testIdentifier));
+        }
+    }
+
+    @Override
+    public void reportingEntryPublished(TestIdentifier testIdentifier, ReportEntry entry) {
+        for (Map.Entry<String, String> pair : entry.getKeyValuePairs().entrySet()) {
+            if ("stdout".equals(pair.getKey())) {
+                recorder.addOutput(getClassName(testIdentifier), pair.getValue(), false);
+            } else if ("stderr".equals(pair.getKey())) {
+                recorder.addOutput(getClassName(testIdentifier), pair.getValue(), true);
+            }
+        }
+    }
+
+    private String getClassName(TestIdentifier testIdentifier) {
+        TestIdentifier current = testIdentifier;
+        while (current != null) {
+            TestSource source = current.getSource().orElse(null);
+            if (source instanceof MethodSource) {
+                return ((MethodSource) source).getClassName();
+            }
+            if (source instanceof ClassSource) {
+                return ((ClassSource) source).getClassName();
+            }
+            current = testPlan != null ? testPlan.getParent(current).orElse(null) : null;
+        }
+        return UNKNOWN_CLASS;
+    }
+
+    /**
+     * @return the legacy reporting name, without the parameter list of a test method so the name
+     * matches the keys of the screenshot map.
+     */
+    private static String getTestName(TestIdentifier testIdentifier) {
+        String name = testIdentifier.getLegacyReportingName();
+        TestSource source = testIdentifier.getSource().orElse(null);
+        if (source instanceof MethodSource) {
+            String methodName = ((MethodSource) source).getMethodName();
+            if (name.startsWith(methodName + "(") && name.endsWith(")")) {
+                return methodName;
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,193 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a report up to date while result files arrive in the result directory.
+ * <p>
+ * Parsed results are kept per file. A new or changed file is the only one parsed again; the model
+ * is extended with it, or rebuilt from the kept results when a known file changed, and only the
+ * pages of the classes in that file, their packages and the index are rendered again. Pages and
+ * output files of classes and packages that are no longer in the results are deleted.
+ * Events are debounced: files are processed once the directory has been quiet for the debounce
+ * time, or after ten times that while files keep arriving.
+ */
+class ReportWatcher {
+    private static final Logger logger = Logger.getLogger(ReportWatcher.class.getName());
+
+    private final TestReportExt report;
+    private final File resultDir;
+    private final long debounceMillis;
+    private final TreeMap<File, SuiteResults> results = new TreeMap<>();
+    /** Names of the kept results and of the model, shared for as long as the report is watched. */
+    private final SymbolTable symbols = new SymbolTable();
+    private AllTestResultsExt model;
+
+    ReportWatcher(TestReportExt report, File resultDir, long debounceMillis) {
+        this.report = report;
+        this.resultDir = resultDir;
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * Generates the report and updates it until the calling thread is interrupted.
+     */
+    void run() throws IOException, InterruptedException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        try {
+            resultDir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            reloadAll();
+
+            Set<File> changedFiles = new TreeSet<>();
+            boolean overflow = false;
+            long firstEventTime = 0;
+            while (true) {
+                WatchKey key;
+                if (changedFiles.isEmpty() && !overflow) {
+                    key = watchService.take();
+                    firstEventTime = System.currentTimeMillis();
+                } else {
+                    long deadline = firstEventTime + debounceMillis * 10;
+                    long wait = Math.min(debounceMillis, deadline - System.currentTimeMillis());
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+                if (key == null) {
+                    if (overflow) {
+                        reloadAll();
+                    } else {
+                        update(changedFiles);
+                    }
+                    changedFiles.clear();
+                    overflow = false;
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        File file = new File(resultDir, ((Path) event.context()).toString());
+                        if (report.isResultFile(file)) {
+                            changedFiles.add(file);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    throw new IOException(String.format("'%s' is no longer accessible.", resultDir));
+                }
+            }
+        } finally {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Reads all result files again and renders every page.
+     */
+    void reloadAll() {
+        Set<String> classNames = new HashSet<>();
+        for (SuiteResults fileResults : results.values()) {
+            classNames.addAll(fileResults.getClassNames());
+        }
+        results.clear();
+        for (File file : report.listResultFiles()) {
+            if (ResultArchive.isArchive(file)) {
+                continue;
+            }
+            SuiteResults fileResults = read(file);
+            if (fileResults != null) {
+                results.put(file, fileResults);
+            }
+        }
+        rebuildModel();
+        if (classNames.isEmpty()) {
+            report.generateFiles(model);
+            return;
+        }
+        // the pages of all classes, so that those of classes that are gone are deleted
+        for (PackageTestResultsExt packageResults : model.getPackages()) {
+            for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                classNames.add(classResults.getName());
+            }
+        }
+        report.generatePages(model, classNames);
+    }
+
+    /**
+     * Reads the new, changed and deleted result files and renders the pages they affect.
+     */
+    void update(Set<File> changedFiles) {
+        Set<String> classNames = new HashSet<>();
+        List<SuiteResults> added = new ArrayList<>();
+        boolean rebuild = false;
+        for (File file : changedFiles) {
+            SuiteResults previous = results.get(file);
+            SuiteResults current = null;
+            if (file.isFile()) {
+                current = read(file);
+                if (current == null) {
+                    // probably still being written, the next change event reads it again
+                    continue;
+                }
+            }
+            if (previous != null) {
+                classNames.addAll(previous.getClassNames());
+                results.remove(file);
+                rebuild = true;
+            }
+            if (current != null) {
+                classNames.addAll(current.getClassNames());
+                // appending keeps the order of a full load only if the file sorts last
+                rebuild |= !results.isEmpty() && results.lastKey().compareTo(file) > 0;
+                results.put(file, current);
+                added.add(current);
+            }
+        }
+        if (classNames.isEmpty()) {
+            return;
+        }
+        if (rebuild) {
+            rebuildModel();
+        } else {
+            for (SuiteResults fileResults : added) {
+                fileResults.replay(report.newModelHandler(model));
+            }
+        }
+        report.generatePages(model, classNames);
+    }
+
+    private void rebuildModel() {
+        model = report.newModel(symbols);
+        for (SuiteResults fileResults : results.values()) {
+            fileResults.replay(report.newModelHandler(model));
+        }
+    }
+
+    /**
+     * @return results of the file or {@code null} if it could not be read.
+     */
+    private SuiteResults read(File file) {
+        try {
+            return report.readResults(file, symbols);
+        } catch (GenerateReportException e) {
+            logger.log(Level.INFO, String.format("Skipping '%s' until it changes again.", file), e);
+            return null;
+        }
+    }
+}
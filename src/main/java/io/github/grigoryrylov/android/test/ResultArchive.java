@@ -0,0 +1,273 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads result files packed into a zip or tar archive without extracting it. Tar archives may be
+ * gzip compressed as a whole ({@code .tar.gz}, {@code .tgz}).
+ * <p>
+ * Entries are matched against the include and exclude globs by their path inside the archive, only
+ * matching entries are decompressed. Entries compressed on their own ({@code .xml.gz}) are
+ * decompressed while they are read.
+ */
+class ResultArchive {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAR_BLOCK_SIZE = 512;
+    private static final int MAX_TAR_HEADER_SIZE = 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final ResultFileFinder finder;
+
+    /**
+     * Receives matching entries in the order they are stored in the archive.
+     */
+    interface EntryReader {
+        /**
+         * @param entry       path of the entry below the path of the archive, such as
+         *                    {@code results.zip/TEST-a.xml}.
+         * @param inputStream uncompressed content of the entry, valid during the call only.
+         */
+        void read(File entry, InputStream inputStream) throws Exception;
+    }
+
+    ResultArchive(File file, ResultFileFinder finder) {
+        this.file = file;
+        this.finder = finder;
+    }
+
+    /**
+     * Returns {@code true} if the file is a zip or tar archive judging by its name.
+     */
+    static boolean isArchive(File file) {
+        String name = file.getName().toLowerCase(Locale.US);
+        return name.endsWith(".zip") || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    /**
+     * Returns {@code true} if the file name has the suffix of a gzip compressed file.
+     */
+    static boolean isCompressed(String name) {
+        return name.toLowerCase(Locale.US).endsWith(".gz");
+    }
+
+    /**
+     * Wraps the stream of a file with the given name into a decompressing stream if the name ends
+     * with {@code .gz}.
+     */
+    static InputStream uncompressed(String name, InputStream inputStream) throws IOException {
+        return isCompressed(name) ? new GZIPInputStream(inputStream, BUFFER_SIZE) : inputStream;
+    }
+
+    /**
+     * Sends the matching entries to the reader.
+     *
+     * @throws IOException            if the archive cannot be read.
+     * @throws GenerateReportException if an entry cannot be read.
+     */
+    void read(EntryReader reader) throws IOException {
+        if (file.getName().toLowerCase(Locale.US).endsWith(".zip")) {
+            readZip(reader);
+            return;
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            if (file.getName().toLowerCase(Locale.US).endsWith(".tar")) {
+                inputStream = new BufferedInputStream(inputStream, BUFFER_SIZE);
+            } else {
+                inputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+            }
+            readTar(inputStream, reader);
+        } finally {
+            Closeables.close(inputStream, true /* swallowIOException */);
+        }
+    }
+
+    private void readZip(EntryReader reader) throws IOException {
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entryName(entry.getName());
+                if (!entry.isDirectory() && finder.matches(name)) {
+                    InputStream inputStream = zipFile.getInputStream(entry);
+                    try {
+                        readEntry(name, inputStream, reader);
+                    } finally {
+                        inputStream.close();
+                    }
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Reads a tar archive in the ustar format, including GNU long names and pax paths.
+     */
+    private void readTar(InputStream inputStream, EntryReader reader) throws IOException {
+        byte[] header = new byte[TAR_BLOCK_SIZE];
+        String nextName = null;
+        while (true) {
+            int read = ByteStreams.read(inputStream, header, 0, TAR_BLOCK_SIZE);
+            if (read == 0 || (read == TAR_BLOCK_SIZE && isZeroBlock(header))) {
+                return;
+            }
+            if (read < TAR_BLOCK_SIZE) {
+                throw new EOFException("unexpected end of tar archive");
+            }
+            long size = parseTarNumber(header, 124, 12);
+            byte type = header[156];
+            String name = nextName != null ? nextName : tarName(header);
+            nextName = null;
+
+            InputStream data = ByteStreams.limit(inputStream, size);
+            if (type == 'L') {
+                nextName = entryName(trimNul(new String(readTarHeader(data, size), UTF_8)));
+            } else if (type == 'x') {
+                nextName = paxPath(readTarHeader(data, size));
+            } else if ((type == '0' || type == 0) && finder.matches(name)) {
+                readEntry(name, new FilterInputStream(data) {
+                    @Override
+                    public void close() {
+                        // the archive stream is closed by the caller
+                    }
+                }, reader);
+            }
+            while (data.skip(Long.MAX_VALUE) > 0 || data.read() != -1) {
+                // skip the rest of the entry
+            }
+            ByteStreams.skipFully(inputStream, (TAR_BLOCK_SIZE - size % TAR_BLOCK_SIZE) % TAR_BLOCK_SIZE);
+        }
+    }
+
+    private void readEntry(String name, InputStream inputStream, EntryReader reader) throws IOException {
+        File entry = new File(file, name);
+        InputStream entryStream = uncompressed(name, inputStream);
+        try {
+            reader.read(entry, entryStream);
+        } catch (GenerateReportException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GenerateReportException(String.format("Could not load test results from '%s'.", entry), e);
+        } finally {
+            if (entryStream != inputStream) {
+                entryStream.close();
+            }
+        }
+    }
+
+    /**
+     * Removes leading {@code ./} and {@code /} that archivers prepend to entry names.
+     */
+    private static String entryName(String name) {
+        while (name.startsWith("./") || name.startsWith("/")) {
+            name = name.substring(name.startsWith("/") ? 1 : 2);
+        }
+        return name;
+    }
+
+    private static String tarName(byte[] header) {
+        String name = trimNul(new String(header, 0, 100, UTF_8));
+        if (header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a'
+                && header[261] == 'r') {
+            String prefix = trimNul(new String(header, 345, 155, UTF_8));
+            if (!prefix.isEmpty()) {
+                name = prefix + '/' + name;
+            }
+        }
+        return entryName(name);
+    }
+
+    private static String trimNul(String value) {
+        int end = value.indexOf('\0');
+        return end == -1 ? value : value.substring(0, end);
+    }
+
+    /**
+     * Parses a numeric header field, octal digits or a base-256 number if its first bit is set.
+     */
+    private static long parseTarNumber(byte[] header, int offset, int length) throws IOException {
+        long value = 0;
+        if ((header[offset] & 0x80) != 0) {
+            value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        int end = offset + length;
+        int i = offset;
+        while (i < end && header[i] == ' ') {
+            i++;
+        }
+        for (; i < end && header[i] != 0 && header[i] != ' '; i++) {
+            if (header[i] < '0' || header[i] > '7') {
+                throw new IOException("invalid tar header");
+            }
+            value = (value << 3) + (header[i] - '0');
+        }
+        return value;
+    }
+
+    private static byte[] readTarHeader(InputStream data, long size) throws IOException {
+        if (size > MAX_TAR_HEADER_SIZE) {
+            throw new IOException("tar extended header too large: " + size);
+        }
+        byte[] bytes = new byte[(int) size];
+        ByteStreams.readFully(data, bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the {@code path} record of a pax extended header or {@code null}.
+     */
+    private static String paxPath(byte[] records) throws IOException {
+        String path = null;
+        int position = 0;
+        while (position < records.length) {
+            int space = position;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(records, position, space - position, UTF_8));
+            } catch (NumberFormatException e) {
+                throw new IOException("invalid pax header", e);
+            }
+            if (length <= space - position + 1 || position + length > records.length) {
+                throw new IOException("invalid pax header");
+            }
+            String record = new String(records, space + 1, position + length - space - 2, UTF_8);
+            if (record.startsWith("path=")) {
+                path = entryName(record.substring("path=".length()));
+            }
+            position += length;
+        }
+        return path;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
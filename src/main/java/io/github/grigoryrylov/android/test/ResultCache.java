@@ -0,0 +1,213 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of parsed result files, so that files that did not change since the previous
+ * report are decoded from a compact binary form instead of being parsed again.
+ * <p>
+ * Each result file has one entry named after the digest of its path. An entry is used only if
+ * the path, size, modification time and SHA-1 of the content all match; a stale entry is replaced
+ * and a corrupt one, detected by a CRC of its data, is deleted and rebuilt. Entries of files that
+ * a complete load did not look up are deleted by {@link #prune}.
+ */
+class ResultCache {
+    private static final int MAGIC = 0x54524331;
+    private static final int VERSION = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File cacheDir;
+    private final String parserName;
+    /** File names of the entries looked up through this cache. */
+    private final Set<String> usedEntries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param parserName name of the parser producing the results, entries of other parsers are stale.
+     */
+    ResultCache(File cacheDir, String parserName) {
+        this.cacheDir = cacheDir;
+        this.parserName = parserName;
+    }
+
+    /**
+     * Describes the current state of a result file.
+     */
+    static final class Key {
+        final String path;
+        final long size;
+        final long lastModified;
+        final byte[] digest;
+
+        private Key(String path, long size, long lastModified, byte[] digest) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Reads the size, modification time and content digest of the file. Computed before parsing,
+     * so a file changing while it is parsed gets an entry that will not match it.
+     */
+    Key key(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long size = file.length();
+        MessageDigest digest = newDigest();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return new Key(path, size, lastModified, digest.digest());
+    }
+
+    /**
+     * @return cached results or {@code null} if there is no valid entry for the key.
+     */
+    SuiteResults load(Key key) {
+        File entry = entryFile(key.path);
+        usedEntries.add(entry.getName());
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes;
+            InputStream inputStream = new FileInputStream(entry);
+            try {
+                bytes = ByteStreams.toByteArray(inputStream);
+            } finally {
+                inputStream.close();
+            }
+            ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
+            if (bytes.length < 8 || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a cache entry");
+            }
+            if (!in.readUTF().equals(parserName) || !in.readUTF().equals(key.path)
+                    || in.readLong() != key.size || in.readLong() != key.lastModified) {
+                return null;
+            }
+            byte[] digest = new byte[key.digest.length];
+            in.readFully(digest);
+            if (!Arrays.equals(digest, key.digest)) {
+                return null;
+            }
+            int length = in.readInt();
+            long checksum = in.readLong();
+            int offset = bytes.length - length;
+            if (length < 0 || offset < 0) {
+                throw new IOException("truncated cache entry");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, offset, length);
+            if (crc.getValue() != checksum) {
+                throw new IOException("corrupt cache entry");
+            }
+            return SuiteResults.readFrom(ByteStreams.newDataInput(bytes, offset), new File(key.path),
+                    key.lastModified);
+        } catch (IOException e) {
+            entry.delete();
+            return null;
+        } catch (IllegalStateException e) {
+            // read past the end of a truncated entry
+            entry.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the entry of the key. The entry is written to a temporary file first, so readers
+     * never see a half written entry.
+     */
+    void store(Key key, SuiteResults results) throws IOException {
+        ByteArrayDataOutput payload = ByteStreams.newDataOutput();
+        results.writeTo(payload);
+        byte[] data = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteArrayDataOutput header = ByteStreams.newDataOutput();
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeUTF(parserName);
+        header.writeUTF(key.path);
+        header.writeLong(key.size);
+        header.writeLong(key.lastModified);
+        header.write(key.digest);
+        header.writeInt(data.length);
+        header.writeLong(crc.getValue());
+
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            throw new IOException("Could not create cache directory " + cacheDir);
+        }
+        File entry = entryFile(key.path);
+        File temp = File.createTempFile(entry.getName(), ".tmp", cacheDir);
+        try {
+            OutputStream outputStream = new FileOutputStream(temp);
+            try {
+                outputStream.write(header.toByteArray());
+                outputStream.write(data);
+            } finally {
+                outputStream.close();
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Deletes the entries that were not looked up through this cache, such as those of result
+     * files deleted since the previous report. To be called once every result file is loaded.
+     */
+    void prune() {
+        File[] entries = cacheDir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (entry.getName().endsWith(".bin") && !usedEntries.contains(entry.getName())) {
+                entry.delete();
+            }
+        }
+    }
+
+    private File entryFile(String path) {
+        byte[] digest = newDigest().digest(path.getBytes(UTF_8));
+        StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+        for (byte b : digest) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return new File(cacheDir, name.append(".bin").toString());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds result files in several root directories.
+ * <p>
+ * Paths relative to their root are matched against include and exclude globs in the syntax of
+ * {@link FileSystem#getPathMatcher}: {@code TEST-*.xml} only matches files directly in a root,
+ * {@code **}{@code /TEST-*.xml} matches them at any depth, including directly in a root, as a
+ * leading {@code **}{@code /} also matches no directory at all. Directories matching an exclude glob
+ * are not entered and symbolic links to directories are not followed. A file reachable from
+ * several roots is found once.
+ * <p>
+ * Gzip compressed files are found if their path without the {@code .gz} suffix matches. A root
+ * that is a file, such as an archive read by {@link ResultArchive}, is found as it is.
+ */
+class ResultFileFinder {
+    private final List<File> roots;
+    private final FileSystem fileSystem = FileSystems.getDefault();
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+    private final Set<Path> foundFiles = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    /**
+     * Receives found files, on the walking threads when walking in parallel.
+     */
+    interface Listener {
+        void onResultFile(File file);
+    }
+
+    ResultFileFinder(List<File> roots, List<String> includes, List<String> excludes) {
+        this.roots = roots;
+        for (String include : includes) {
+            addGlob(this.includes, include);
+        }
+        for (String exclude : excludes) {
+            addGlob(this.excludes, exclude);
+        }
+    }
+
+    /**
+     * Adds the glob, and the glob without a leading {@code **}{@code /}, which the path matcher
+     * requires to match at least one directory.
+     */
+    private void addGlob(List<PathMatcher> matchers, String glob) {
+        matchers.add(fileSystem.getPathMatcher("glob:" + glob));
+        if (glob.startsWith("**/")) {
+            addGlob(matchers, glob.substring("**/".length()));
+        }
+    }
+
+    /**
+     * Walks the roots on the calling thread.
+     *
+     * @return found files sorted by path.
+     */
+    List<File> findFiles() {
+        final List<File> files = new ArrayList<>();
+        Listener listener = new Listener() {
+            @Override
+            public void onResultFile(File file) {
+                files.add(file);
+            }
+        };
+        for (File root : roots) {
+            if (root.isFile()) {
+                addRoot(root, listener);
+                continue;
+            }
+            List<File> directories = new ArrayList<>();
+            directories.add(root);
+            while (!directories.isEmpty()) {
+                File directory = directories.remove(directories.size() - 1);
+                directories.addAll(walkDirectory(root, directory, listener));
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Walks the roots in parallel on the pool, reporting each file as soon as it is found.
+     * Returns once all roots have been walked.
+     */
+    void findFiles(ForkJoinPool pool, final Listener listener) {
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<WalkTask> tasks = new ArrayList<>(roots.size());
+                for (File root : roots) {
+                    if (root.isFile()) {
+                        addRoot(root, listener);
+                    } else {
+                        tasks.add(new WalkTask(root, root, listener));
+                    }
+                }
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Returns {@code true} if the file in the root would be found.
+     */
+    boolean matches(File root, File file) {
+        return matches(root.toPath().relativize(file.toPath()));
+    }
+
+    /**
+     * Returns {@code true} if a file at the path, relative to a root and separated by {@code /},
+     * would be found.
+     */
+    boolean matches(String relativePath) {
+        return matches(fileSystem.getPath(relativePath));
+    }
+
+    private boolean matches(Path relativePath) {
+        String name = relativePath.toString();
+        Path uncompressedPath = null;
+        if (ResultArchive.isCompressed(name)) {
+            uncompressedPath = fileSystem.getPath(name.substring(0, name.length() - ".gz".length()));
+        }
+        boolean included = matchesAny(includes, relativePath)
+                || uncompressedPath != null && matchesAny(includes, uncompressedPath);
+        return included && !matchesAny(excludes, relativePath)
+                && (uncompressedPath == null || !matchesAny(excludes, uncompressedPath));
+    }
+
+    private void addRoot(File root, Listener listener) {
+        if (foundFiles.add(root.toPath().toAbsolutePath().normalize())) {
+            listener.onResultFile(root);
+        }
+    }
+
+    /**
+     * Reports the matching files of the directory.
+     *
+     * @return subdirectories to walk.
+     */
+    private List<File> walkDirectory(File root, File directory, Listener listener) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        List<File> directories = new ArrayList<>();
+        Path rootPath = root.toPath();
+        for (File child : children) {
+            Path path = child.toPath();
+            Path relativePath = rootPath.relativize(path);
+            if (child.isDirectory()) {
+                if (!Files.isSymbolicLink(path) && !matchesAny(excludes, relativePath)) {
+                    directories.add(child);
+                }
+            } else if (matches(relativePath) && foundFiles.add(path.toAbsolutePath().normalize())) {
+                listener.onResultFile(child);
+            }
+        }
+        return directories;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File root;
+        private final File directory;
+        private final Listener listener;
+
+        WalkTask(File root, File directory, Listener listener) {
+            this.root = root;
+            this.directory = directory;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            List<WalkTask> tasks = new ArrayList<>();
+            for (File subdirectory : walkDirectory(root, directory, listener)) {
+                tasks.add(new WalkTask(root, subdirectory, listener));
+            }
+            invokeAll(tasks);
+        }
+    }
+}
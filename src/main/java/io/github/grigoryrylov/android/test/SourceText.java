@@ -0,0 +1,136 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Element content left in the result file it was read from. Only the position of its bytes is
+ * kept; they are read and decoded again each time the text is used, so the text does not take
+ * memory between loading and rendering. Long texts are mapped instead of read and decoded a
+ * chunk at a time. The decoded text is only kept, softly, after random access through
+ * {@link #charAt} or {@link #subSequence}.
+ * <p>
+ * The file must not change in between, which is checked by its modification time.
+ */
+final class SourceText extends TextArena.Text implements CharSequence {
+    /** Texts with more bytes are mapped instead of read into the heap. */
+    private static final int MAP_SIZE = 64 * 1024;
+
+    private final File file;
+    private final long lastModified;
+    private final int start;
+    private final int end;
+    private final int length;
+    private final int contentHash;
+    private SoftReference<String> decoded;
+
+    /**
+     * @param length      number of characters of the decoded text.
+     * @param contentHash hash code of the decoded text, see {@link #getContentHash()}.
+     */
+    SourceText(File file, long lastModified, int start, int end, int length, int contentHash) {
+        this.file = file;
+        this.lastModified = lastModified;
+        this.start = start;
+        this.end = end;
+        this.length = length;
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Writes the position of the text in the form read by {@link #readFrom}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(start);
+        out.writeInt(end);
+        out.writeInt(length);
+        out.writeInt(contentHash);
+    }
+
+    /**
+     * Reads a position written by {@link #writeTo(DataOutput)} of text in {@code file}.
+     */
+    static SourceText readFrom(DataInput in, File file, long lastModified) throws IOException {
+        int start = in.readInt();
+        int end = in.readInt();
+        int length = in.readInt();
+        int contentHash = in.readInt();
+        if (start < 0 || end < start || length < 0) {
+            throw new IOException("invalid text position " + start + ".." + end);
+        }
+        return new SourceText(file, lastModified, start, end, length, contentHash);
+    }
+
+    /**
+     * @return {@code hashCode()} of the decoded text as a string, known without reading the file.
+     */
+    int getContentHash() {
+        return contentHash;
+    }
+
+    @Override
+    void writeTo(Writer out) throws IOException {
+        JUnitXmlTokenizer.decodeContent(read(), 0, end - start, out);
+    }
+
+    private ByteBuffer read() throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            if (file.lastModified() != lastModified || randomAccessFile.length() < end) {
+                throw new IOException(String.format("'%s' changed after it was loaded.", file));
+            }
+            FileChannel channel = randomAccessFile.getChannel();
+            if (end - start > MAP_SIZE) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(end - start);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) == -1) {
+                    throw new EOFException(String.format("'%s' changed after it was loaded.", file));
+                }
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Override
+    boolean isEmpty() {
+        return start == end;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return decoded().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decoded().subSequence(start, end);
+    }
+
+    private String decoded() {
+        String text = decoded != null ? decoded.get() : null;
+        if (text == null) {
+            text = toString();
+            decoded = new SoftReference<>(text);
+        }
+        return text;
+    }
+}
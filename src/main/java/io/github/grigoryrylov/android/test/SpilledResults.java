@@ -0,0 +1,451 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Results of a report too large to keep in memory, see {@link TestReportExt#setSpillDir}.
+ * <p>
+ * The events of the result files are turned into records of the model: a class, a test, a
+ * failure of the test before it, or output of a class. Records are collected in memory up to a
+ * size and then written to a temporary file as a run sorted by class, test, device, flavor and
+ * arrival. {@link #merge} merges the runs and passes on one class at a time, so only the results
+ * of that class are in memory. Tests are added in the order of the sort, which
+ * {@link TestResultExt#compareTo} agrees with, so pages are the same as those of a model loaded
+ * in memory.
+ */
+final class SpilledResults implements Closeable {
+    private static final byte CLASS = 0;
+    private static final byte TEST = 1;
+    private static final byte FAILURE = 2;
+    private static final byte STANDARD_OUTPUT = 3;
+    private static final byte STANDARD_ERROR = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** Estimated size of a record without its strings. */
+    private static final int RECORD_SIZE = 96;
+
+    private final File spillDir;
+    private final long runSize;
+    private final Map<String, String> screenshotMap;
+    private final List<File> runs = new ArrayList<>();
+    private final List<Record> records = new ArrayList<>();
+    private long recordsSize;
+    private long sequence;
+
+    /**
+     * @param runSize estimated size in bytes of the records collected before they are written to a run.
+     */
+    SpilledResults(File spillDir, long runSize, Map<String, String> screenshotMap) {
+        this.spillDir = spillDir;
+        this.runSize = runSize;
+        this.screenshotMap = screenshotMap;
+    }
+
+    /**
+     * @return handler for the events of one result file, like {@link ModelSuiteHandler}.
+     */
+    TestSuiteHandler newHandler() {
+        return new RecordingHandler();
+    }
+
+    /**
+     * Receives the results of one class at a time.
+     */
+    interface ClassListener {
+        /**
+         * @return empty model the records of the next class are added to.
+         */
+        AllTestResultsExt newModel();
+
+        /**
+         * Called once all records of the class have been added to its model.
+         */
+        void onClass(ClassTestResultsExt classResults) throws Exception;
+    }
+
+    /**
+     * Merges the runs and the records still in memory, passing on the classes in the order of their names.
+     */
+    void merge(ClassListener listener) throws Exception {
+        Collections.sort(records);
+        PriorityQueue<RunReader> readers = new PriorityQueue<>();
+        try {
+            for (File run : runs) {
+                addReader(readers, new FileRunReader(run));
+            }
+            addReader(readers, new MemoryRunReader(records.iterator()));
+
+            AllTestResultsExt model = null;
+            String className = null;
+            TestResultExt test = null;
+            while (!readers.isEmpty()) {
+                RunReader reader = readers.poll();
+                Record record = reader.record;
+                if (!record.className.equals(className)) {
+                    if (model != null) {
+                        listener.onClass(model.addTestClass(className));
+                    }
+                    model = listener.newModel();
+                    className = record.className;
+                }
+                test = record.addTo(model, test);
+                addReader(readers, reader);
+            }
+            if (model != null) {
+                listener.onClass(model.addTestClass(className));
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void addReader(PriorityQueue<RunReader> readers, RunReader reader) throws IOException {
+        if (reader.next()) {
+            readers.add(reader);
+        } else {
+            reader.close();
+        }
+    }
+
+    /**
+     * Deletes the runs.
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+        runs.clear();
+        records.clear();
+    }
+
+    private void add(Record record) {
+        record.sequence = sequence++;
+        records.add(record);
+        recordsSize += record.estimateSize();
+        if (recordsSize >= runSize) {
+            writeRun();
+        }
+    }
+
+    private void writeRun() {
+        Collections.sort(records);
+        File run = null;
+        try {
+            if (!spillDir.isDirectory() && !spillDir.mkdirs()) {
+                throw new IOException(String.format("Could not create '%s'.", spillDir));
+            }
+            run = File.createTempFile("results", ".run", spillDir);
+            runs.add(run);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+            try {
+                out.writeInt(records.size());
+                for (Record record : records) {
+                    record.writeTo(out);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not write test results to '%s'.",
+                    run != null ? run : spillDir), e);
+        }
+        records.clear();
+        recordsSize = 0;
+    }
+
+    /**
+     * Turns the events of a result file into records, like {@link ModelSuiteHandler} merges them.
+     */
+    private class RecordingHandler implements TestSuiteHandler {
+        private String deviceName = "";
+        private String projectName = "";
+        private String flavorName = "";
+        private String suiteName;
+        private Record currentTest;
+
+        @Override
+        public void onTestSuite(String suiteName) {
+            this.suiteName = suiteName;
+            add(new Record(CLASS, suiteName, null, null, null, null));
+        }
+
+        @Override
+        public void onProperties(String deviceName, String projectName, String flavorName) {
+            this.deviceName = deviceName;
+            this.projectName = projectName;
+            this.flavorName = flavorName;
+        }
+
+        @Override
+        public void onTestCase(String className, String testName, long duration) {
+            currentTest = new Record(TEST, className, testName, deviceName, projectName, flavorName);
+            currentTest.duration = duration;
+            add(currentTest);
+        }
+
+        @Override
+        public void onFailure(String message, CharSequence stackTrace) {
+            String screenshotPath = screenshotMap.get(currentTest.className + '#' + currentTest.testName);
+            Record record = new Record(FAILURE, currentTest.className, currentTest.testName, currentTest.device,
+                    currentTest.project, currentTest.flavor);
+            record.values.add(message);
+            record.values.add(stackTrace.toString());
+            record.values.add(screenshotPath != null ? screenshotPath : "");
+            add(record);
+        }
+
+        @Override
+        public void onSkippedTestCase(String className, String testName) {
+            Record record = new Record(TEST, className, testName, deviceName, projectName, flavorName);
+            record.ignored = true;
+            add(record);
+            currentTest = null;
+        }
+
+        @Override
+        public void onStandardOutput(CharSequence text) {
+            addOutput(STANDARD_OUTPUT, text);
+        }
+
+        @Override
+        public void onStandardError(CharSequence text) {
+            addOutput(STANDARD_ERROR, text);
+        }
+
+        private void addOutput(byte kind, CharSequence text) {
+            Record record = new Record(kind, suiteName, null, null, null, null);
+            record.values.add(text.toString());
+            add(record);
+        }
+    }
+
+    /**
+     * A class, a test, a failure as message, stack trace and screenshot path, or output of a class.
+     * A failure has the key of its test and sorts right after it.
+     */
+    private static final class Record implements Comparable<Record> {
+        final byte kind;
+        final String className;
+        final String testName;
+        final String device;
+        final String project;
+        final String flavor;
+        long duration;
+        boolean ignored;
+        long sequence;
+        final List<String> values = new ArrayList<>(0);
+
+        Record(byte kind, String className, String testName, String device, String project, String flavor) {
+            this.kind = kind;
+            this.className = className;
+            this.testName = testName;
+            this.device = device;
+            this.project = project;
+            this.flavor = flavor;
+        }
+
+        /**
+         * @param test the test added last.
+         * @return the test added last, including this record.
+         */
+        TestResultExt addTo(AllTestResultsExt model, TestResultExt test) {
+            switch (kind) {
+                case CLASS:
+                    model.addTestClass(className);
+                    break;
+                case TEST:
+                    test = model.addTest(className, testName, duration, device, project, flavor);
+                    if (ignored) {
+                        test.ignored();
+                    }
+                    break;
+                case FAILURE:
+                    test.addFailure(values.get(0), values.get(1), null, device, project, flavor, values.get(2));
+                    break;
+                case STANDARD_OUTPUT:
+                    model.addTestClass(className).addStandardOutput(values.get(0));
+                    break;
+                case STANDARD_ERROR:
+                    model.addTestClass(className).addStandardError(values.get(0));
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+            return test;
+        }
+
+        long estimateSize() {
+            long size = RECORD_SIZE + 2L * (length(className) + length(testName));
+            for (String value : values) {
+                size += 16 + 2L * length(value);
+            }
+            return size;
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            int diff = className.compareTo(other.className);
+            if (diff == 0) {
+                diff = compare(testName, other.testName);
+            }
+            if (diff == 0) {
+                diff = compare(device, other.device);
+            }
+            if (diff == 0) {
+                diff = compare(flavor, other.flavor);
+            }
+            return diff != 0 ? diff : Long.compare(sequence, other.sequence);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeByte(kind);
+            writeString(className, out);
+            writeString(testName, out);
+            writeString(device, out);
+            writeString(project, out);
+            writeString(flavor, out);
+            out.writeLong(duration);
+            out.writeBoolean(ignored);
+            out.writeLong(sequence);
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(value, out);
+            }
+        }
+
+        static Record readFrom(DataInputStream in) throws IOException {
+            Record record = new Record(in.readByte(), readString(in), readString(in), readString(in),
+                    readString(in), readString(in));
+            record.duration = in.readLong();
+            record.ignored = in.readBoolean();
+            record.sequence = in.readLong();
+            int valueCount = in.readInt();
+            for (int i = 0; i < valueCount; i++) {
+                record.values.add(readString(in));
+            }
+            return record;
+        }
+
+        private static int compare(String a, String b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+
+        private static void writeString(String value, DataOutputStream out) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length == -1) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+
+    /**
+     * Sorted records of a run, ordered by their next record.
+     */
+    private abstract static class RunReader implements Comparable<RunReader>, Closeable {
+        Record record;
+
+        /**
+         * Moves to the next record.
+         *
+         * @return {@code false} at the end of the run.
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public int compareTo(RunReader other) {
+            return record.compareTo(other.record);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class MemoryRunReader extends RunReader {
+        private final Iterator<Record> records;
+
+        MemoryRunReader(Iterator<Record> records) {
+            this.records = records;
+        }
+
+        @Override
+        boolean next() {
+            record = records.hasNext() ? records.next() : null;
+            return record != null;
+        }
+    }
+
+    private static final class FileRunReader extends RunReader {
+        private final DataInputStream in;
+        private int remaining;
+
+        FileRunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+            try {
+                remaining = in.readInt();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                record = null;
+                return false;
+            }
+            remaining--;
+            record = Record.readFrom(in);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // only read
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.grigoryrylov.android.test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Streams the result file with StAX and reports its content as soon as each element is complete.
+ * <p>
+ * Only the test case being read is kept in memory. Suite properties apply to the test cases
+ * that follow them, which is how JUnit XML writers lay the file out; test cases before them have
+ * an empty device, project and flavor.
+ */
+public class StaxSuiteParser implements SuiteParser {
+    private final XmlParserContext context;
+    private int captureLimit;
+
+    public StaxSuiteParser() {
+        this(XmlParserContext.getDefault());
+    }
+
+    public StaxSuiteParser(XmlParserContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sets the maximum number of characters kept of each failure body and output element, longer
+     * text keeps its beginning and end around a marker. Text is kept whole by default.
+     */
+    public void setCaptureLimit(int captureLimit) {
+        this.captureLimit = captureLimit;
+    }
+
+    @Override
+    public void parse(InputStream inputStream, TestSuiteHandler handler) throws Exception {
+        XMLInputFactory factory = context.acquireInputFactory();
+        final XMLStreamReader reader;
+        try {
+            reader = factory.createXMLStreamReader(inputStream);
+        } finally {
+            context.releaseInputFactory(factory);
+        }
+        try {
+            SuiteContentReader content = new SuiteContentReader(handler, 0, captureLimit);
+            SuiteContentReader.Attributes attributes = new SuiteContentReader.Attributes() {
+                @Override
+                public String getValue(String name) {
+                    return reader.getAttributeValue(null, name);
+                }
+            };
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        content.startElement(reader.getLocalName(), attributes);
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        content.endElement(reader.getLocalName());
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (content.isCapturingText()) {
+                            content.characters(reader.getTextCharacters(), reader.getTextStart(),
+                                    reader.getTextLength());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package io.github.grigoryrylov.android.test;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns the element and text stream of a JUnit XML result file into {@link TestSuiteHandler} events.
+ * <p>
+ * Shared by the streaming parsers: they report elements and text as they read them and this class
+ * keeps track of properties, the current test case and the text being collected.
+ */
+class SuiteContentReader {
+    private final TestSuiteHandler handler;
+    private final int captureLimit;
+    private final List<TextCapture> captures = new ArrayList<>();
+    private int depth;
+
+    private int propertiesDepth = -1;
+    private String deviceName;
+    private String projectName;
+    private String flavorName;
+
+    private int testCaseDepth = -1;
+    private String className;
+    private String testName;
+    private long duration;
+    private boolean skipped;
+    private final List<TextCapture> failures = new ArrayList<>();
+
+    SuiteContentReader(TestSuiteHandler handler) {
+        this(handler, 0);
+    }
+
+    /**
+     * @param depth number of elements already open, for reading a part of a document.
+     */
+    SuiteContentReader(TestSuiteHandler handler, int depth) {
+        this(handler, depth, 0);
+    }
+
+    /**
+     * @param captureLimit maximum number of characters kept of a failure body or output element,
+     *                     0 for no limit, see {@link BoundedText}.
+     */
+    SuiteContentReader(TestSuiteHandler handler, int depth, int captureLimit) {
+        this.handler = handler;
+        this.depth = depth;
+        this.captureLimit = captureLimit;
+    }
+
+    /**
+     * Attributes of the element being started.
+     */
+    interface Attributes {
+        /**
+         * @return attribute value or {@code null} if the element has no such attribute.
+         */
+        String getValue(String name);
+    }
+
+    void startElement(String name, Attributes attributes) throws ParseException {
+        depth++;
+        if (depth == 1) {
+            handler.onTestSuite(valueOrEmpty(attributes.getValue("name")));
+        }
+        if (name.equals("properties")) {
+            propertiesDepth = depth;
+            deviceName = null;
+            projectName = null;
+            flavorName = null;
+        } else if (name.equals("property") && depth == propertiesDepth + 1) {
+            String propertyName = attributes.getValue("name");
+            if ("device".equals(propertyName)) {
+                if (deviceName == null) {
+                    deviceName = attributes.getValue("value");
+                }
+            } else if ("project".equals(propertyName)) {
+                if (projectName == null) {
+                    projectName = attributes.getValue("value");
+                }
+            } else if ("flavor".equals(propertyName)) {
+                if (flavorName == null) {
+                    flavorName = attributes.getValue("value");
+                }
+            }
+        } else if (name.equals("testcase")) {
+            testCaseDepth = depth;
+            className = valueOrEmpty(attributes.getValue("classname"));
+            testName = valueOrEmpty(attributes.getValue("name"));
+            duration = parseDuration(valueOrEmpty(attributes.getValue("time")));
+            skipped = false;
+            failures.clear();
+        } else if (name.equals("failure") && testCaseDepth != -1) {
+            TextCapture failure = new TextCapture(name, depth, valueOrEmpty(attributes.getValue("message")),
+                    captureLimit);
+            failures.add(failure);
+            captures.add(failure);
+        } else if (name.equals("skipped") && testCaseDepth != -1) {
+            skipped = true;
+        } else if (name.equals("ignored-testcase")) {
+            handler.onSkippedTestCase(valueOrEmpty(attributes.getValue("classname")),
+                    valueOrEmpty(attributes.getValue("name")));
+        } else if (name.equals("system-out") || name.equals("system-err")) {
+            captures.add(new TextCapture(name, depth, null, captureLimit));
+        }
+    }
+
+    void endElement(String name) {
+        for (int i = captures.size() - 1; i >= 0; i--) {
+            TextCapture capture = captures.get(i);
+            if (capture.depth == depth && capture.name.equals(name)) {
+                captures.remove(i);
+                if (name.equals("system-out")) {
+                    handler.onStandardOutput(capture.getText());
+                } else if (name.equals("system-err")) {
+                    handler.onStandardError(capture.getText());
+                }
+            }
+        }
+
+        if (depth == propertiesDepth && name.equals("properties")) {
+            propertiesDepth = -1;
+            handler.onProperties(valueOrEmpty(deviceName), valueOrEmpty(projectName),
+                    valueOrEmpty(flavorName));
+        } else if (depth == testCaseDepth && name.equals("testcase")) {
+            testCaseDepth = -1;
+            if (skipped) {
+                handler.onSkippedTestCase(className, testName);
+            } else {
+                handler.onTestCase(className, testName, duration);
+                for (TextCapture failure : failures) {
+                    handler.onFailure(failure.message, failure.getText());
+                }
+            }
+            failures.clear();
+        }
+        depth--;
+    }
+
+    /**
+     * Returns {@code true} if text at the current position belongs to a failure or to the output.
+     */
+    boolean isCapturingText() {
+        return !captures.isEmpty();
+    }
+
+    /**
+     * Returns {@code true} if no properties, test case or collected text is open, so the
+     * document can be split at the current position.
+     */
+    boolean isBetweenTestCases() {
+        return captures.isEmpty() && propertiesDepth == -1 && testCaseDepth == -1;
+    }
+
+    void characters(char[] chars, int start, int length) {
+        for (int i = 0; i < captures.size(); i++) {
+            captures.get(i).builder().append(chars, start, length);
+        }
+    }
+
+    void characters(CharSequence text) {
+        for (int i = 0; i < captures.size(); i++) {
+            captures.get(i).builder().append(text);
+        }
+    }
+
+    /**
+     * Like {@link #characters(CharSequence)} but for text that stays valid, such as {@link XmlText}.
+     * The text is kept as is when it makes up the whole content of an element.
+     */
+    void reference(CharSequence text) {
+        for (int i = 0; i < captures.size(); i++) {
+            TextCapture capture = captures.get(i);
+            if (capture.text == null && capture.reference == null) {
+                capture.reference = text;
+            } else {
+                capture.builder().append(text);
+            }
+        }
+    }
+
+    /**
+     * Converts the {@code time} attribute in seconds into milliseconds the same way as
+     * {@link TestReportExt#parse}, skipping {@code DecimalFormat} for plain decimal numbers.
+     */
+    static long parseDuration(String time) throws ParseException {
+        int length = time.length();
+        int point = time.indexOf('.');
+        int integerDigits = point == -1 ? length : point;
+        if (integerDigits > 0 && integerDigits <= 15 && point != length - 1) {
+            long millis = 0;
+            for (int i = 0; i < length; i++) {
+                char ch = time.charAt(i);
+                if (i == point) {
+                    continue;
+                }
+                if (ch < '0' || ch > '9') {
+                    millis = -1;
+                    break;
+                }
+                if (i < integerDigits) {
+                    millis = millis * 10 + (ch - '0');
+                }
+            }
+            if (millis >= 0) {
+                millis *= 1000;
+                for (int i = 1, scale = 100; i <= 3 && point + i < length && point != -1; i++, scale /= 10) {
+                    millis += (time.charAt(point + i) - '0') * scale;
+                }
+                return millis;
+            }
+        }
+        BigDecimal seconds = TestReportExt.parse(time);
+        return seconds.multiply(BigDecimal.valueOf(1000)).longValue();
+    }
+
+    private static String valueOrEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static class TextCapture {
+        final String name;
+        final int depth;
+        final String message;
+        final int limit;
+        BoundedText text;
+        CharSequence reference;
+
+        TextCapture(String name, int depth, String message, int limit) {
+            this.name = name;
+            this.depth = depth;
+            this.message = message;
+            this.limit = limit;
+        }
+
+        BoundedText builder() {
+            if (text == null) {
+                text = new BoundedText(limit);
+                if (reference != null) {
+                    text.append(reference);
+                    reference = null;
+                }
+            }
+            return text;
+        }
+
+        CharSequence getText() {
+            if (reference instanceof XmlText && limit > 0 && ((XmlText) reference).getEncodedLength() > limit) {
+                builder();
+            }
+            if (text != null) {
+                return text.toString();
+            }
+            return reference != null ? reference : "";
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.InputStream;
+
+/**
+ * Reads a JUnit XML result file and reports its content to {@link TestSuiteHandler}.
+ */
+public interface SuiteParser {
+    void parse(InputStream inputStream, TestSuiteHandler handler) throws Exception;
+}
@@ -0,0 +1,310 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Partial results of a single result file.
+ * <p>
+ * Records the events of {@link TestSuiteHandler} so a file can be parsed on any thread and merged
+ * into the model later by {@link #replay}.
+ */
+public class SuiteResults implements TestSuiteHandler {
+    private static final byte TEST_SUITE = 0;
+    private static final byte PROPERTIES = 1;
+    private static final byte TEST_CASE = 2;
+    private static final byte FAILURE = 3;
+    private static final byte SKIPPED_TEST_CASE = 4;
+    private static final byte STANDARD_OUTPUT = 5;
+    private static final byte STANDARD_ERROR = 6;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** Length written instead of the text of a {@link SourceText}, which is followed by its position. */
+    private static final int SOURCE_TEXT = -2;
+
+    private byte[] events = new byte[16];
+    private int eventCount;
+    private long[] durations = new long[16];
+    private int durationCount;
+    private final List<CharSequence> values = new ArrayList<>();
+    private final SymbolTable symbols;
+    private Closeable source;
+
+    public SuiteResults() {
+        this(null);
+    }
+
+    /**
+     * @param symbols table the suite, class, test, device, project and flavor names are interned
+     *                in, or {@code null} to keep the strings as received.
+     */
+    SuiteResults(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    @Override
+    public void onTestSuite(String suiteName) {
+        addEvent(TEST_SUITE);
+        values.add(intern(suiteName));
+    }
+
+    @Override
+    public void onProperties(String deviceName, String projectName, String flavorName) {
+        addEvent(PROPERTIES);
+        values.add(intern(deviceName));
+        values.add(intern(projectName));
+        values.add(intern(flavorName));
+    }
+
+    @Override
+    public void onTestCase(String className, String testName, long duration) {
+        addEvent(TEST_CASE);
+        values.add(intern(className));
+        values.add(intern(testName));
+        if (durationCount == durations.length) {
+            durations = Arrays.copyOf(durations, durationCount * 2);
+        }
+        durations[durationCount++] = duration;
+    }
+
+    @Override
+    public void onFailure(String message, CharSequence stackTrace) {
+        addEvent(FAILURE);
+        values.add(message);
+        values.add(stackTrace);
+    }
+
+    @Override
+    public void onSkippedTestCase(String className, String testName) {
+        addEvent(SKIPPED_TEST_CASE);
+        values.add(intern(className));
+        values.add(intern(testName));
+    }
+
+    @Override
+    public void onStandardOutput(CharSequence text) {
+        addEvent(STANDARD_OUTPUT);
+        values.add(text);
+    }
+
+    @Override
+    public void onStandardError(CharSequence text) {
+        addEvent(STANDARD_ERROR);
+        values.add(text);
+    }
+
+    /**
+     * Sends recorded events to the given handler in the order they were received.
+     */
+    public void replay(TestSuiteHandler handler) {
+        int value = 0;
+        int duration = 0;
+        for (int i = 0; i < eventCount; i++) {
+            switch (events[i]) {
+                case TEST_SUITE:
+                    handler.onTestSuite(values.get(value++).toString());
+                    break;
+                case PROPERTIES:
+                    handler.onProperties(values.get(value++).toString(), values.get(value++).toString(),
+                            values.get(value++).toString());
+                    break;
+                case TEST_CASE:
+                    handler.onTestCase(values.get(value++).toString(), values.get(value++).toString(),
+                            durations[duration++]);
+                    break;
+                case FAILURE:
+                    handler.onFailure(values.get(value++).toString(), values.get(value++));
+                    break;
+                case SKIPPED_TEST_CASE:
+                    handler.onSkippedTestCase(values.get(value++).toString(), values.get(value++).toString());
+                    break;
+                case STANDARD_OUTPUT:
+                    handler.onStandardOutput(values.get(value++));
+                    break;
+                case STANDARD_ERROR:
+                    handler.onStandardError(values.get(value++));
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * @return names of the suites and of the classes of the test cases recorded.
+     */
+    Set<String> getClassNames() {
+        Set<String> classNames = new HashSet<>();
+        int value = 0;
+        for (int i = 0; i < eventCount; i++) {
+            switch (events[i]) {
+                case TEST_SUITE:
+                    classNames.add(values.get(value++).toString());
+                    break;
+                case TEST_CASE:
+                case SKIPPED_TEST_CASE:
+                    classNames.add(values.get(value).toString());
+                    value += 2;
+                    break;
+                case PROPERTIES:
+                    value += 3;
+                    break;
+                case FAILURE:
+                    value += 2;
+                    break;
+                default:
+                    value++;
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Writes the recorded events in the form read by {@link #readFrom}. Text is written as UTF-8
+     * without the length limit of {@link DataOutput#writeUTF}, {@link SourceText} as its position
+     * in the result file.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(eventCount);
+        out.write(events, 0, eventCount);
+        out.writeInt(durationCount);
+        for (int i = 0; i < durationCount; i++) {
+            out.writeLong(durations[i]);
+        }
+        out.writeInt(values.size());
+        for (CharSequence value : values) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else if (value instanceof SourceText) {
+                out.writeInt(SOURCE_TEXT);
+                ((SourceText) value).writeTo(out);
+            } else {
+                byte[] bytes = value.toString().getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads events written by {@link #writeTo}.
+     *
+     * @param file         result file the events were recorded from, which {@link SourceText} refers to.
+     * @param lastModified modification time of the file when it was recorded.
+     * @throws IOException if the data is not a valid recording.
+     */
+    static SuiteResults readFrom(DataInput in, File file, long lastModified) throws IOException {
+        SuiteResults results = new SuiteResults();
+        results.eventCount = readCount(in);
+        results.events = new byte[Math.max(results.eventCount, 16)];
+        in.readFully(results.events, 0, results.eventCount);
+        int expectedValues = 0;
+        int expectedDurations = 0;
+        for (int i = 0; i < results.eventCount; i++) {
+            switch (results.events[i]) {
+                case TEST_SUITE:
+                case STANDARD_OUTPUT:
+                case STANDARD_ERROR:
+                    expectedValues += 1;
+                    break;
+                case PROPERTIES:
+                    expectedValues += 3;
+                    break;
+                case TEST_CASE:
+                    expectedValues += 2;
+                    expectedDurations++;
+                    break;
+                case FAILURE:
+                case SKIPPED_TEST_CASE:
+                    expectedValues += 2;
+                    break;
+                default:
+                    throw new IOException("unknown event " + results.events[i]);
+            }
+        }
+        results.durationCount = readCount(in);
+        results.durations = new long[Math.max(results.durationCount, 16)];
+        for (int i = 0; i < results.durationCount; i++) {
+            results.durations[i] = in.readLong();
+        }
+        int valueCount = readCount(in);
+        for (int i = 0; i < valueCount; i++) {
+            int length = in.readInt();
+            if (length == -1) {
+                results.values.add(null);
+            } else if (length == SOURCE_TEXT) {
+                results.values.add(SourceText.readFrom(in, file, lastModified));
+            } else if (length < 0) {
+                throw new IOException("negative length " + length);
+            } else {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                results.values.add(new String(bytes, UTF_8));
+            }
+        }
+        if (results.durationCount != expectedDurations || valueCount != expectedValues) {
+            throw new IOException("recording does not match its events");
+        }
+        return results;
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("negative count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Keeps the file the recorded text refers to, such as a memory mapping, until {@link #release()}.
+     */
+    public void setSource(Closeable source) {
+        this.source = source;
+    }
+
+    /**
+     * Copies text referring to the source into strings and releases the source, so the results
+     * can be kept after the file has been merged. {@link SourceText} is kept as it is.
+     */
+    public void detach() {
+        for (int i = 0; i < values.size(); i++) {
+            CharSequence value = values.get(i);
+            if (value != null && !(value instanceof String) && !(value instanceof SourceText)) {
+                values.set(i, value.toString());
+            }
+        }
+        release();
+    }
+
+    /**
+     * Closes the source set by {@link #setSource}. Recorded text must not be used afterwards.
+     */
+    public void release() {
+        try {
+            Closeables.close(source, true /* swallowIOException */);
+        } catch (IOException e) {
+            // cannot happen
+        }
+        source = null;
+    }
+
+    private String intern(String name) {
+        return symbols != null ? symbols.intern(name) : name;
+    }
+
+    private void addEvent(byte event) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, eventCount * 2);
+        }
+        events[eventCount++] = event;
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.grigoryrylov.android.test;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps strings repeated across test results, such as class, test and device names, to small ids
+ * and to a canonical instance of each string. {@code null} is a symbol like any other.
+ * <p>
+ * One table is shared by the parsing threads and the model of a report, so files parsed in
+ * parallel keep a single copy of each name. Known symbols are looked up without locking.
+ */
+final class SymbolTable {
+    private static final int NULL_ID = 0;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    /** Symbols by id, replaced by a larger copy when full. Written while holding the lock. */
+    private volatile String[] symbols = new String[16];
+    private int size = NULL_ID + 1;
+
+    int getId(String symbol) {
+        if (symbol == null) {
+            return NULL_ID;
+        }
+        Integer id = ids.get(symbol);
+        return id != null ? id : add(symbol);
+    }
+
+    String getSymbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * @return the instance of the string kept by this table, added if the string is new.
+     */
+    String intern(String symbol) {
+        return symbol == null ? null : getSymbol(getId(symbol));
+    }
+
+    private synchronized int add(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        String[] current = symbols;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = symbol;
+        // publish the symbol before its id, readers get the id first
+        symbols = current;
+        ids.put(symbol, size);
+        return size++;
+    }
+}
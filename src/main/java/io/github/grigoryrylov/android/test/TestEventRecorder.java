@@ -0,0 +1,122 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the report model from the events of a test framework running in the same process, so
+ * results do not have to be written to XML and parsed back. Tests are merged into the model as
+ * they finish; events may come from several threads.
+ */
+class TestEventRecorder {
+    private final TestReportExt report;
+    private final AllTestResultsExt model;
+    private final Map<Object, RunningTest> runningTests = new HashMap<>();
+
+    private static class RunningTest {
+        private final long startTime = System.nanoTime();
+        private final List<Throwable> failures = new ArrayList<>();
+        private boolean skipped;
+    }
+
+    TestEventRecorder(TestReportExt report) {
+        this.report = report;
+        model = report.newModel(new SymbolTable());
+    }
+
+    /**
+     * @param test key identifying the test in the following events.
+     */
+    synchronized void testStarted(Object test) {
+        runningTests.put(test, new RunningTest());
+    }
+
+    /**
+     * Adds a failure to a running test, or adds a failed test if the failure happened outside of
+     * one, such as in a class level setup.
+     */
+    synchronized void testFailed(Object test, String className, String testName, Throwable failure) {
+        RunningTest runningTest = runningTests.get(test);
+        if (runningTest != null) {
+            runningTest.failures.add(failure);
+        } else {
+            addTest(className, testName, 0, Collections.singletonList(failure));
+        }
+    }
+
+    /**
+     * Marks a running test as skipped, for tests aborted by a failed assumption.
+     */
+    synchronized void testAborted(Object test) {
+        RunningTest runningTest = runningTests.get(test);
+        if (runningTest != null) {
+            runningTest.skipped = true;
+        }
+    }
+
+    synchronized void testFinished(Object test, String className, String testName) {
+        RunningTest runningTest = runningTests.remove(test);
+        if (runningTest == null) {
+            return;
+        }
+        if (runningTest.skipped && runningTest.failures.isEmpty()) {
+            testSkipped(className, testName);
+        } else {
+            addTest(className, testName, (System.nanoTime() - runningTest.startTime) / 1000000,
+                    runningTest.failures);
+        }
+    }
+
+    synchronized void testSkipped(String className, String testName) {
+        newModelHandler().onSkippedTestCase(className, testName);
+    }
+
+    /**
+     * Adds text written by the tests of the class to its standard output or error.
+     */
+    synchronized void addOutput(String className, CharSequence text, boolean error) {
+        ModelSuiteHandler handler = newModelHandler();
+        handler.onTestSuite(className);
+        if (error) {
+            handler.onStandardError(text);
+        } else {
+            handler.onStandardOutput(text);
+        }
+    }
+
+    /**
+     * Generates the report from the tests finished so far.
+     */
+    synchronized void generateReport() {
+        report.generateFiles(model);
+    }
+
+    private void addTest(String className, String testName, long duration, List<Throwable> failures) {
+        ModelSuiteHandler handler = newModelHandler();
+        handler.onTestCase(className, testName, duration);
+        for (Throwable failure : failures) {
+            handler.onFailure(failure.toString(), stackTrace(failure));
+        }
+    }
+
+    /**
+     * @return a handler without device, project and flavor, like for result files without these
+     * properties.
+     */
+    private ModelSuiteHandler newModelHandler() {
+        ModelSuiteHandler handler = report.newModelHandler(model);
+        handler.onProperties("", "", "");
+        return handler;
+    }
+
+    private static String stackTrace(Throwable failure) {
+        StringWriter writer = new StringWriter();
+        failure.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
@@ -1,13 +1,7 @@
 package io.github.grigoryrylov.android.test;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -16,18 +10,54 @@ import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Extended test report with showing screenshots.
  */
 public class TestReportExt {
+    private static final Logger logger = Logger.getLogger(TestReportExt.class.getName());
+
     private final HtmlReportRenderer htmlRenderer = new HtmlReportRenderer();
     private final ReportType reportType;
     private final File resultDir;
     private final File reportDir;
     private Map<String, String> screenshotMap;
+    private ParserType parserType = ParserType.FAST;
+    private XmlParserContext parserContext = XmlParserContext.getDefault();
+    private int parallelism = 1;
+    private long memoryMapThreshold = 32L * 1024 * 1024;
+    private int chunkSize = 8 * 1024 * 1024;
+    private File cacheDir;
+    private List<File> resultDirs;
+    private List<String> includes = Collections.singletonList("TEST-*.xml");
+    private List<String> excludes = Collections.emptyList();
+    private boolean deferredAggregation;
+    private boolean stackTraceReferences;
+    private boolean outputFiles;
+    private boolean lazyStackTraces;
+    private int captureLimit;
+    private File spillDir;
+    private long spillRunSize = 64L * 1024 * 1024;
+    private boolean pipelinedRendering;
+    private boolean virtualThreads;
 
     /**
      * Simple usage of reporter.
@@ -62,124 +92,960 @@ public class TestReportExt {
         htmlRenderer.requireResource(utils.loadFromResources("style.css"));
     }
 
+    /**
+     * Selects the parser used for reading result files, {@link ParserType#FAST} by default.
+     */
+    public void setParserType(ParserType parserType) {
+        this.parserType = parserType;
+    }
+
+    /**
+     * Sets the cache of XML parsers, {@link XmlParserContext#getDefault()} by default.
+     */
+    public void setParserContext(XmlParserContext parserContext) {
+        this.parserContext = parserContext;
+    }
+
+    /**
+     * Sets the number of threads parsing result files and rendering pages. With the default value
+     * of 1 files are parsed and pages rendered one by one on the calling thread; the generated
+     * report is the same either way.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the size in bytes from which result files are memory mapped instead of being read into
+     * the heap, 32 MB by default. Only used by {@link ParserType#FAST}; each mapping is released
+     * as soon as its file has been merged into the report.
+     */
+    public void setMemoryMapThreshold(long memoryMapThreshold) {
+        if (memoryMapThreshold < 0) {
+            throw new IllegalArgumentException("memoryMapThreshold must not be negative: " + memoryMapThreshold);
+        }
+        this.memoryMapThreshold = memoryMapThreshold;
+    }
+
+    /**
+     * Sets the size in bytes of the parts a single large result file is split into, 8 MB by default.
+     * With parallelism above 1, files of at least two chunks are split at test case boundaries and
+     * the chunks are parsed in parallel. Only used by {@link ParserType#FAST}.
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the directory keeping parsed result files between reports, no cache is used by default.
+     * Files whose path, size, modification time and content did not change since the previous
+     * report are decoded from the cache instead of being parsed.
+     */
+    public void setCacheDir(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Sets the directories searched for result files, by default only the result directory
+     * passed to the constructor.
+     * <p>
+     * A result directory may also be a zip or tar archive, optionally gzip compressed
+     * ({@code .zip}, {@code .tar}, {@code .tar.gz}, {@code .tgz}). Its entries are matched
+     * against the globs by their path inside the archive and read without extracting the archive,
+     * in the order they are stored. Entries of archives are not cached.
+     */
+    public void setResultDirs(List<File> resultDirs) {
+        this.resultDirs = new ArrayList<>(resultDirs);
+    }
+
+    /**
+     * Sets the globs a result file's path relative to its result directory has to match,
+     * {@code TEST-*.xml} by default. {@code *} does not cross directories: use
+     * {@code **}{@code /TEST-*.xml} to search the result directory and its subdirectories. Gzip
+     * compressed files match by their path without the {@code .gz} suffix and are decompressed
+     * while they are read.
+     */
+    public void setIncludes(List<String> includes) {
+        this.includes = new ArrayList<>(includes);
+    }
+
+    /**
+     * Sets the globs of paths relative to a result directory that are skipped, none by default.
+     * Matching directories are not searched.
+     */
+    public void setExcludes(List<String> excludes) {
+        this.excludes = new ArrayList<>(excludes);
+    }
+
+    /**
+     * Enables computing the counts, durations and failures of packages, classes, devices and
+     * variants in one pass once all results are loaded instead of updating every level for each
+     * test as it is added, off by default. The pass is parallel with parallelism above 1; the
+     * generated report is the same either way.
+     */
+    public void setDeferredAggregation(boolean deferredAggregation) {
+        this.deferredAggregation = deferredAggregation;
+    }
+
+    /**
+     * Enables rendering a stack trace that is already on a class page, such as the trace of a
+     * precondition failing every test of the class, as a link to its first copy, off by default.
+     */
+    public void setStackTraceReferences(boolean stackTraceReferences) {
+        this.stackTraceReferences = stackTraceReferences;
+    }
+
+    /**
+     * Enables writing the standard output and error of each class to text files next to its page
+     * while the results are loaded, instead of keeping them in memory, off by default. Class pages
+     * then get tabs that load the files in chunks when they are opened; browsers that do not allow
+     * pages opened from disk to read files show a link to the file instead.
+     */
+    public void setOutputFiles(boolean outputFiles) {
+        this.outputFiles = outputFiles;
+    }
+
+    /**
+     * Enables leaving stack traces in the result files until they are rendered, off by default.
+     * Loading keeps only the position of each trace and pages read it from the file again, so
+     * memory no longer grows with the text of the failures. Applies to uncompressed files read by
+     * {@link ParserType#FAST}; the files must not change until the report has been generated.
+     * Entries of the cache set by {@link #setCacheDir} keep the position of traces too.
+     */
+    public void setLazyStackTraces(boolean lazyStackTraces) {
+        this.lazyStackTraces = lazyStackTraces;
+    }
+
+    /**
+     * Sets the maximum number of characters kept of each failure body and each standard output
+     * or error element of a result file, 0 by default for no limit. Longer text keeps its first
+     * and last half of the limit around a marker with the number of characters left out, the
+     * result file still holds all of it. Bounds the memory and page size taken by a single test
+     * that writes megabytes of output or a huge assertion message.
+     */
+    public void setCaptureLimit(int captureLimit) {
+        this.captureLimit = captureLimit;
+    }
+
+    /**
+     * Sets the directory temporary files are written to while {@link #generateReport()} runs, so
+     * that a report of more results than fit in memory can be generated, none by default.
+     * <p>
+     * With a spill directory the results are written to sorted runs as the files are read and
+     * merged back class by class: a class page is rendered as soon as its results are complete,
+     * and only the counts and failed tests of the rendered classes are kept for the overview and
+     * package pages. The generated report is the same either way. The runs are deleted once the
+     * report is generated. With parallelism above 1, only twice as many files as threads are
+     * parsed ahead of the file being written to the runs.
+     */
+    public void setSpillDir(File spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * Sets the estimated size in bytes of the results collected in memory before they are written
+     * to a run in the spill directory, 64 MB by default. See {@link #setSpillDir}.
+     */
+    public void setSpillRunSize(long spillRunSize) {
+        if (spillRunSize < 1) {
+            throw new IllegalArgumentException("spillRunSize must be positive: " + spillRunSize);
+        }
+        this.spillRunSize = spillRunSize;
+    }
+
+    /**
+     * Enables rendering class pages while the remaining result files are still being parsed, off
+     * by default. Requires the results of each class to be in consecutive result files, such as
+     * one suite per file: once a file shares no class with the files merged before it, the pages
+     * of their classes are final and rendered on a pool of their own. Only the counts and failed
+     * tests of rendered classes are kept, the index and package pages are written from them at
+     * the end. The generated report is the same either way. Applies to {@link #generateReport()};
+     * ignored with a spill directory.
+     */
+    public void setPipelinedRendering(boolean pipelinedRendering) {
+        this.pipelinedRendering = pipelinedRendering;
+    }
+
+    /**
+     * Enables writing each page and copying each script and stylesheet of the report on a virtual
+     * thread of its own on JDK 21 and later, off by default. Suits report directories on network
+     * storage, where writing a page takes mostly waiting: thousands of pages are written at once
+     * without sizing a pool. Older JDKs use a pool of platform threads instead, four per processor
+     * but at least the parallelism. Parsing and aggregation keep using the parallelism; the
+     * generated report is the same either way. Applies to reports that are not pipelined or spilled.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     public void generateReport() {
+        if (spillDir != null) {
+            generateSpilledReport();
+            return;
+        }
+        if (pipelinedRendering) {
+            generatePipelinedReport();
+            return;
+        }
         AllTestResultsExt model = loadModel();
         generateFiles(model);
     }
 
+    /**
+     * Loads the result files and saves them as a snapshot, see {@link ModelSnapshot}.
+     */
+    public void writeSnapshot(File snapshotFile) {
+        AllTestResultsExt model = loadModel();
+        try {
+            ModelSnapshot.write(model, snapshotFile);
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not write test results to '%s'.", snapshotFile), e);
+        }
+    }
+
+    /**
+     * Generates the report from a snapshot written by {@link #writeSnapshot} instead of the result files.
+     */
+    public void generateReportFromSnapshot(File snapshotFile) {
+        AllTestResultsExt model;
+        try {
+            model = ModelSnapshot.read(snapshotFile, newModel(new SymbolTable()));
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not load test results from '%s'.", snapshotFile), e);
+        }
+        generateFiles(model);
+    }
+
+    /**
+     * Generates the report from a saved output of {@code am instrument -r} instead of the result
+     * files. The output may hold several runs one after another and may be gzip compressed
+     * ({@code .gz}). Test durations are not known and reported as zero.
+     */
+    public void generateReportFromInstrumentation(File outputFile) {
+        AllTestResultsExt model = newModel(new SymbolTable());
+        InputStream inputStream = null;
+        try {
+            inputStream = ResultArchive.uncompressed(outputFile.getName(), new FileInputStream(outputFile));
+            new InstrumentationOutputParser(false).parse(inputStream, new ModelSuiteHandler(model, screenshotMap));
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not load test results from '%s'.", outputFile), e);
+        } finally {
+            release(inputStream);
+        }
+        generateFiles(model);
+    }
+
+    /**
+     * Generates the report from the output of {@code am instrument -r} read until the end of the
+     * stream, such as the output of the {@code adb} process while the tests run. Each test is
+     * merged as soon as its result is read, durations are the time between its start and result.
+     */
+    public void generateReportFromInstrumentation(InputStream inputStream) {
+        AllTestResultsExt model = newModel(new SymbolTable());
+        try {
+            new InstrumentationOutputParser(true).parse(inputStream, new ModelSuiteHandler(model, screenshotMap));
+        } catch (IOException e) {
+            throw new GenerateReportException("Could not load test results from the instrumentation output.", e);
+        }
+        generateFiles(model);
+    }
+
+    /**
+     * Generates the report and keeps regenerating the parts of it affected by result files created,
+     * changed or deleted in the result directory, until the calling thread is interrupted.
+     * Only files directly in the result directory passed to the constructor are watched, archives
+     * set by {@link #setResultDirs} are not read.
+     *
+     * @param debounceMillis time the result directory has to be quiet before changes are processed.
+     */
+    public void watch(long debounceMillis) throws InterruptedException {
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new GenerateReportException(String.format("Could not create '%s'.", resultDir));
+        }
+        try {
+            new ReportWatcher(this, resultDir, debounceMillis).run();
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not watch '%s'.", resultDir), e);
+        }
+    }
+
     private AllTestResultsExt loadModel() {
-        AllTestResultsExt model = new AllTestResultsExt();
-        if (resultDir.exists()) {
-            File[] files = resultDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.getName().startsWith("TEST-") && file.getName().endsWith(".xml")) {
-                        mergeFromFile(file, model);
+        final AllTestResultsExt model = newModel(new SymbolTable());
+        loadResults(new ResultTarget() {
+            @Override
+            public TestSuiteHandler newHandler() {
+                return new ModelSuiteHandler(model, screenshotMap);
+            }
+        }, model.getSymbols());
+        return model;
+    }
+
+    /**
+     * Receives the results of the result files, one handler per file in the order of their paths.
+     */
+    private interface ResultTarget {
+        TestSuiteHandler newHandler();
+    }
+
+    /**
+     * @param symbols table names are interned in while files are parsed in parallel, or
+     *                {@code null} to keep them as parsed.
+     */
+    private void loadResults(ResultTarget target, SymbolTable symbols) {
+        ResultCache cache = newResultCache();
+        if (parallelism > 1) {
+            loadInParallel(target, symbols, cache);
+        } else {
+            loadInOrder(target, cache);
+        }
+        prune(cache);
+    }
+
+    /**
+     * Loads the results like {@link #loadResults}, but with parallelism above 1 parses only a
+     * {@link ParseWindow} of files ahead of the one being merged, so that the results waiting to
+     * be merged stay bounded however many files there are.
+     */
+    private void loadResultsInWindow(ResultTarget target) {
+        ResultCache cache = newResultCache();
+        if (parallelism <= 1) {
+            loadInOrder(target, cache);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                ParseWindow window = new ParseWindow(pool, null, cache);
+                while (window.hasNext()) {
+                    replay(window.next(), target);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        prune(cache);
+    }
+
+    private void loadInOrder(ResultTarget target, ResultCache cache) {
+        for (File file : listResultFiles()) {
+            if (ResultArchive.isArchive(file)) {
+                readArchive(file, target);
+            } else {
+                release(readFile(file, target.newHandler(), null, cache));
+            }
+        }
+    }
+
+    /**
+     * Generates the report in pipelined mode, see {@link #setPipelinedRendering}. Files are parsed
+     * through a {@link ParseWindow} and merged in the order of their paths into a model per group
+     * of consecutive files sharing classes; once a file shares no class with the current group,
+     * the pages of the group are rendered on a pool of their own while the next group is merged,
+     * so that rendering does not wait behind queued parses. Merging waits for the oldest render
+     * once as many groups as the parallelism are waiting to be rendered.
+     */
+    private void generatePipelinedReport() {
+        SymbolTable symbols = new SymbolTable();
+        AllTestResultsExt summary = new AllTestResultsExt(true, symbols);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ForkJoinPool renderPool = new ForkJoinPool(parallelism);
+        try {
+            ArrayDeque<Future<Void>> renders = new ArrayDeque<>();
+            Set<String> renderedClasses = new HashSet<>();
+            Set<String> groupClasses = new HashSet<>();
+            AllTestResultsExt group = newModel(symbols);
+            ResultCache cache = newResultCache();
+            ParseWindow window = new ParseWindow(pool, symbols, cache);
+            while (window.hasNext()) {
+                for (SuiteResults fileResults : window.next()) {
+                    try {
+                        Set<String> classNames = fileResults.getClassNames();
+                        if (!groupClasses.isEmpty() && Collections.disjoint(groupClasses, classNames)) {
+                            if (renders.size() == parallelism) {
+                                getResult(renders.remove());
+                            }
+                            renders.add(renderPool.submit(newGroupRender(group, summary)));
+                            renderedClasses.addAll(groupClasses);
+                            groupClasses.clear();
+                            group = newModel(symbols);
+                        }
+                        for (String className : classNames) {
+                            if (renderedClasses.contains(className)) {
+                                throw new GenerateReportException(String.format("Results of class '%s' are "
+                                        + "in result files that are not consecutive, which pipelined rendering "
+                                        + "requires.", className));
+                            }
+                        }
+                        groupClasses.addAll(classNames);
+                        fileResults.replay(new ModelSuiteHandler(group, screenshotMap));
+                    } finally {
+                        fileResults.release();
                     }
                 }
             }
+            prune(cache);
+            renders.add(renderPool.submit(newGroupRender(group, summary)));
+            for (Future<Void> render : renders) {
+                getResult(render);
+            }
+            try {
+                generateSummaryPages(summary);
+            } catch (Exception e) {
+                throw new GenerateReportException(
+                        String.format("Could not generate test report to '%s'.", reportDir), e);
+            }
+        } finally {
+            renderPool.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates the report through runs written to the spill directory, see {@link #setSpillDir}.
+     */
+    private void generateSpilledReport() {
+        final SpilledResults results = new SpilledResults(spillDir, spillRunSize, screenshotMap);
+        try {
+            loadResultsInWindow(new ResultTarget() {
+                @Override
+                public TestSuiteHandler newHandler() {
+                    return results.newHandler();
+                }
+            });
+            final AllTestResultsExt summary = new AllTestResultsExt(true, new SymbolTable());
+            try {
+                results.merge(new SpilledResults.ClassListener() {
+                    private AllTestResultsExt classModel;
+
+                    @Override
+                    public AllTestResultsExt newModel() {
+                        classModel = TestReportExt.this.newModel(new SymbolTable());
+                        return classModel;
+                    }
+
+                    @Override
+                    public void onClass(ClassTestResultsExt classResults) throws Exception {
+                        classModel.aggregate(null);
+                        generatePage(classResults, new ClassPageRendererExt(reportType, stackTraceReferences),
+                                new File(reportDir, classResults.getFilename(reportType) + ".html"));
+                        summary.addTestClass(classResults.getName()).copySummary(classResults);
+                        classModel.getTextArena().release();
+                    }
+                });
+                generateSummaryPages(summary);
+            } catch (GenerateReportException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new GenerateReportException(
+                        String.format("Could not generate test report to '%s'.", reportDir), e);
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Renders the pages of the classes of one group of result files in pipelined mode and copies
+     * their summaries, see {@link #setPipelinedRendering}.
+     */
+    private Callable<Void> newGroupRender(final AllTestResultsExt group, final AllTestResultsExt summary) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                group.aggregate(null);
+                for (PackageTestResultsExt packageResults : group.getPackages()) {
+                    for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                        new PageTask<>(classResults, new ClassPageRendererExt(reportType, stackTraceReferences),
+                                new File(reportDir, classResults.getFilename(reportType) + ".html")).call();
+                        synchronized (summary) {
+                            summary.addTestClass(classResults.getName()).copySummary(classResults);
+                        }
+                    }
+                }
+                group.getTextArena().release();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Generates the index and the package pages from a model holding the summaries of all classes,
+     * see {@link ClassTestResultsExt#copySummary}, and copies the resources of all pages.
+     */
+    private void generateSummaryPages(AllTestResultsExt summary) throws Exception {
+        summary.aggregatePackages();
+        htmlRenderer.copyResources(reportDir);
+        generatePage(summary, new OverviewPageRendererExt(reportType), new File(reportDir, "index.html"));
+        for (PackageTestResultsExt packageResults : summary.getPackages()) {
+            generatePage(packageResults, new PackagePageRendererExt(reportType),
+                    new File(reportDir, packageResults.getFilename(reportType) + ".html"));
+        }
+    }
+
+    /**
+     * @return empty model configured by the settings of this report.
+     */
+    AllTestResultsExt newModel(SymbolTable symbols) {
+        AllTestResultsExt model = new AllTestResultsExt(deferredAggregation, symbols);
+        if (outputFiles) {
+            model.setOutputDir(reportDir);
         }
         return model;
     }
 
-    private void mergeFromFile(File file, AllTestResultsExt model) {
-        InputStream inputStream = null;
+    /**
+     * Deletes the entries of result files the completed load did not look up, see
+     * {@link ResultCache#prune}.
+     */
+    private static void prune(ResultCache cache) {
+        if (cache != null) {
+            cache.prune();
+        }
+    }
+
+    private ResultCache newResultCache() {
+        String parserName = captureLimit > 0 ? parserType.name() + '/' + captureLimit : parserType.name();
+        if (lazyStackTraces) {
+            // entries keep the position of stack traces instead of their text
+            parserName += "/lazy";
+        }
+        return cacheDir != null ? new ResultCache(cacheDir, parserName) : null;
+    }
+
+    private ResultFileFinder newResultFileFinder() {
+        return new ResultFileFinder(resultDirs != null ? resultDirs : Collections.singletonList(resultDir),
+                includes, excludes);
+    }
+
+    /**
+     * @return result files of all result directories sorted by path.
+     */
+    List<File> listResultFiles() {
+        return newResultFileFinder().findFiles();
+    }
+
+    /**
+     * Returns {@code true} if the file in the result directory passed to the constructor matches
+     * the include and exclude globs.
+     */
+    boolean isResultFile(File file) {
+        return newResultFileFinder().matches(resultDir, file);
+    }
+
+    /**
+     * Reads the file into results that can be kept as long as needed, with the names interned
+     * in {@code symbols}.
+     */
+    SuiteResults readResults(File file, SymbolTable symbols) {
+        SuiteResults results = new SuiteResults(symbols);
+        results.setSource(readFile(file, results, symbols, newResultCache()));
+        results.detach();
+        return results;
+    }
+
+    ModelSuiteHandler newModelHandler(AllTestResultsExt model) {
+        return new ModelSuiteHandler(model, screenshotMap);
+    }
+
+    /**
+     * Searches the result directories and parses files into {@link SuiteResults} on a fork-join
+     * pool, each file as soon as it is found. Once the search is done the results are replayed into
+     * the target on the calling thread in the order of their paths. Large files are split further
+     * into chunks parsed on the same pool, see {@link FastSuiteParser}. Names are interned in the
+     * symbol table of the model while parsing, so results waiting to be merged do not hold a copy
+     * of them per test.
+     */
+    private void loadInParallel(ResultTarget target, SymbolTable symbols, ResultCache cache) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
         try {
-            //noinspection IOResourceOpenedButNotSafelyClosed
-            inputStream = new FileInputStream(file);
-            Document document;
+            for (Future<List<SuiteResults>> task : parseInParallel(pool, symbols, cache)) {
+                replay(getResult(task), target);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void replay(List<SuiteResults> fileResults, ResultTarget target) {
+        for (int i = 0; i < fileResults.size(); i++) {
             try {
-                document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
-                        new InputSource(inputStream));
+                fileResults.get(i).replay(target.newHandler());
             } finally {
-                inputStream.close();
-            }
-
-            String deviceName = null;
-            String projectName = null;
-            String flavorName = null;
-            NodeList propertiesList = document.getElementsByTagName("properties");
-            for (int i = 0; i < propertiesList.getLength(); i++) {
-                Element properties = (Element) propertiesList.item(i);
-                XPath xPath = XPathFactory.newInstance().newXPath();
-                deviceName = xPath.evaluate("property[@name='device']/@value", properties);
-                projectName = xPath.evaluate("property[@name='project']/@value", properties);
-                flavorName = xPath.evaluate("property[@name='flavor']/@value", properties);
-            }
-
-            NodeList testCases = document.getElementsByTagName("testcase");
-            for (int i = 0; i < testCases.getLength(); i++) {
-                Element testCase = (Element) testCases.item(i);
-                String className = testCase.getAttribute("classname");
-                String testName = testCase.getAttribute("name");
-                BigDecimal duration = parse(testCase.getAttribute("time"));
-                duration = duration.multiply(BigDecimal.valueOf(1000));
-                NodeList failures = testCase.getElementsByTagName("failure");
-                NodeList ignored = testCase.getElementsByTagName("skipped");
-
-                if (ignored.getLength() > 0) {
-                    TestResultExt ignoredResult = model.addTest(className, testName, 0, deviceName, projectName, flavorName);
-                    ignoredResult.ignored();
-                    model.addIgnoredTest(ignoredResult);
-                    continue;
-                }
-                TestResultExt testResult = model.addTest(className, testName, duration.longValue(),
-                        deviceName, projectName, flavorName);
-                for (int j = 0; j < failures.getLength(); j++) {
-                    Element failure = (Element) failures.item(j);
-                    testResult.addFailure(
-                            failure.getAttribute("message"), failure.getTextContent(),
-                            deviceName, projectName, flavorName,
-                            getScreenshotByClass(className, testName));
+                fileResults.get(i).release();
+            }
+        }
+    }
+
+    /**
+     * Searches the result directories and submits a task parsing each file to the pool as soon as
+     * it is found.
+     *
+     * @return the tasks in the order of the paths of their files, once the search is done.
+     */
+    private Collection<Future<List<SuiteResults>>> parseInParallel(final ForkJoinPool pool, final SymbolTable symbols,
+                                                                   final ResultCache cache) {
+        final Map<File, Future<List<SuiteResults>>> tasks = new ConcurrentSkipListMap<>();
+        newResultFileFinder().findFiles(pool, new ResultFileFinder.Listener() {
+            @Override
+            public void onResultFile(File file) {
+                tasks.put(file, pool.submit(newParseTask(file, symbols, cache)));
+            }
+        });
+        return tasks.values();
+    }
+
+    /**
+     * @return task parsing the file, or each file of the archive, into {@link SuiteResults}.
+     */
+    private Callable<List<SuiteResults>> newParseTask(final File file, final SymbolTable symbols,
+                                                      final ResultCache cache) {
+        return new Callable<List<SuiteResults>>() {
+            @Override
+            public List<SuiteResults> call() {
+                if (ResultArchive.isArchive(file)) {
+                    return parseArchive(file, symbols);
                 }
+                SuiteResults results = new SuiteResults(symbols);
+                results.setSource(readFile(file, results, symbols, cache));
+                return Collections.singletonList(results);
+            }
+        };
+    }
+
+    /**
+     * Result files parsed on a fork-join pool a few at a time, taken in the order of their paths.
+     * The files are listed up front rather than parsed as they are found, and the next file is
+     * submitted as the results of one are taken, so a slow consumer holds back the parsing instead
+     * of collecting the results of every file.
+     */
+    private final class ParseWindow {
+        private final ForkJoinPool pool;
+        private final SymbolTable symbols;
+        private final ResultCache cache;
+        private final Iterator<File> files;
+        private final int size;
+        private final ArrayDeque<Future<List<SuiteResults>>> tasks = new ArrayDeque<>();
+
+        /**
+         * Starts parsing twice as many files as the pool has threads, so that the pool stays busy
+         * while results are merged.
+         */
+        ParseWindow(ForkJoinPool pool, SymbolTable symbols, ResultCache cache) {
+            this.pool = pool;
+            this.symbols = symbols;
+            this.cache = cache;
+            this.files = listResultFiles().iterator();
+            this.size = parseWindowSize(pool);
+            while (tasks.size() < size && files.hasNext()) {
+                tasks.add(pool.submit(newParseTask(files.next(), symbols, cache)));
+            }
+        }
+
+        boolean hasNext() {
+            return !tasks.isEmpty();
+        }
+
+        /**
+         * @return results of the next file, once parsed.
+         */
+        List<SuiteResults> next() {
+            Future<List<SuiteResults>> task = tasks.remove();
+            if (files.hasNext()) {
+                tasks.add(pool.submit(newParseTask(files.next(), symbols, cache)));
             }
-            NodeList ignoredTestCases = document.getElementsByTagName("ignored-testcase");
-            for (int i = 0; i < ignoredTestCases.getLength(); i++) {
-                Element testCase = (Element) ignoredTestCases.item(i);
-                String className = testCase.getAttribute("classname");
-                String testName = testCase.getAttribute("name");
-                model.addTest(className, testName, 0, deviceName, projectName, flavorName).ignored();
+            return getResult(task);
+        }
+    }
+
+    /**
+     * @return number of files parsed at a time on the pool, twice its threads.
+     */
+    private static int parseWindowSize(ForkJoinPool pool) {
+        return 2 * pool.getParallelism();
+    }
+
+    private static <T> T getResult(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenerateReportException("Interrupted while loading test results.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
-            String suiteClassName = document.getDocumentElement().getAttribute("name");
-            ClassTestResultsExt suiteResults = model.addTestClass(suiteClassName);
-            NodeList stdOutElements = document.getElementsByTagName("system-out");
-            for (int i = 0; i < stdOutElements.getLength(); i++) {
-                suiteResults.addStandardOutput(stdOutElements.item(i).getTextContent());
+            throw new GenerateReportException("Could not load test results.", e.getCause());
+        }
+    }
+
+    /**
+     * Reads the file into the handler, decoding it from the cache if it has a valid entry.
+     *
+     * @param symbols table names are interned in while the file is parsed for the cache, or
+     *                {@code null} to keep them as parsed.
+     * @return memory mapping the events refer to, to be released once they are merged, or {@code null}.
+     */
+    private Closeable readFile(File file, TestSuiteHandler handler, SymbolTable symbols, ResultCache cache) {
+        Closeable mapping = null;
+        try {
+            if (cache == null) {
+                return parseFile(file, handler);
             }
-            NodeList stdErrElements = document.getElementsByTagName("system-err");
-            for (int i = 0; i < stdErrElements.getLength(); i++) {
-                suiteResults.addStandardError(stdErrElements.item(i).getTextContent());
+            ResultCache.Key key = cache.key(file);
+            SuiteResults results = cache.load(key);
+            if (results == null) {
+                results = new SuiteResults(symbols);
+                mapping = parseFile(file, results);
+                try {
+                    cache.store(key, results);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, String.format("Could not cache test results of '%s'.", file), e);
+                }
             }
+            results.replay(handler);
+            return mapping;
         } catch (Exception e) {
+            release(mapping);
             throw new GenerateReportException(String.format("Could not load test results from '%s'.", file), e);
+        }
+    }
+
+    private Closeable parseFile(File file, TestSuiteHandler handler) throws Exception {
+        SuiteParser parser = newParser();
+        if (parser instanceof FastSuiteParser && !ResultArchive.isCompressed(file.getName())) {
+            return ((FastSuiteParser) parser).parse(file, handler);
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            inputStream = ResultArchive.uncompressed(file.getName(), inputStream);
+            parser.parse(inputStream, handler);
         } finally {
-            try {
-                Closeables.close(inputStream, true /* swallowIOException */);
-            } catch (IOException e) {
-                // cannot happen
+            Closeables.close(inputStream, true /* swallowIOException */);
+        }
+        return null;
+    }
+
+    private SuiteParser newParser() {
+        SuiteParser parser = parserType.newParser(parserContext, captureLimit);
+        if (parser instanceof FastSuiteParser) {
+            FastSuiteParser fastParser = (FastSuiteParser) parser;
+            fastParser.setMappingThreshold(memoryMapThreshold);
+            fastParser.setChunkSize(chunkSize);
+            fastParser.setReferenceText(outputFiles);
+            fastParser.setLazyStackTraces(lazyStackTraces);
+        }
+        return parser;
+    }
+
+    /**
+     * Reads the matching entries of the archive into the target in the order they are stored.
+     */
+    private void readArchive(File archive, final ResultTarget target) {
+        readArchive(archive, new ResultArchive.EntryReader() {
+            @Override
+            public void read(File entry, InputStream inputStream) throws Exception {
+                newParser().parse(inputStream, target.newHandler());
+            }
+        });
+    }
+
+    /**
+     * Reads the matching entries of the archive on the calling thread, which has to belong to a
+     * fork-join pool, and parses each of them in a task of its own on that pool. No more entries
+     * than a {@link ParseWindow} holds are inflated at a time; the oldest one is joined before the
+     * next is read.
+     *
+     * @return results of the entries in the order they are stored.
+     */
+    private List<SuiteResults> parseArchive(File archive, final SymbolTable symbols) {
+        final int size = parseWindowSize(ForkJoinTask.getPool());
+        final ArrayDeque<ForkJoinTask<SuiteResults>> tasks = new ArrayDeque<>();
+        final List<SuiteResults> results = new ArrayList<>();
+        readArchive(archive, new ResultArchive.EntryReader() {
+            @Override
+            public void read(final File entry, InputStream inputStream) throws IOException {
+                if (tasks.size() == size) {
+                    results.add(tasks.remove().join());
+                }
+                final byte[] bytes = ByteStreams.toByteArray(inputStream);
+                tasks.add(ForkJoinTask.adapt(new Callable<SuiteResults>() {
+                    @Override
+                    public SuiteResults call() {
+                        SuiteResults results = new SuiteResults(symbols);
+                        try {
+                            newParser().parse(new ByteArrayInputStream(bytes), results);
+                        } catch (Exception e) {
+                            throw new GenerateReportException(
+                                    String.format("Could not load test results from '%s'.", entry), e);
+                        }
+                        return results;
+                    }
+                }).fork());
+            }
+        });
+        while (!tasks.isEmpty()) {
+            results.add(tasks.remove().join());
+        }
+        return results;
+    }
+
+    private void readArchive(File archive, ResultArchive.EntryReader reader) {
+        try {
+            new ResultArchive(archive, newResultFileFinder()).read(reader);
+        } catch (IOException e) {
+            throw new GenerateReportException(String.format("Could not load test results from '%s'.", archive), e);
+        }
+    }
+
+    private static void release(Closeable mapping) {
+        try {
+            Closeables.close(mapping, true /* swallowIOException */);
+        } catch (IOException e) {
+            // cannot happen
+        }
+    }
+
+    void generateFiles(AllTestResultsExt model) {
+        List<PageTask<?>> pages = new ArrayList<>();
+        for (PackageTestResultsExt packageResults : model.getPackages()) {
+            pages.add(new PageTask<>(packageResults, new PackagePageRendererExt(reportType),
+                    new File(reportDir, packageResults.getFilename(reportType) + ".html")));
+            for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                pages.add(new PageTask<>(classResults, new ClassPageRendererExt(reportType, stackTraceReferences),
+                        new File(reportDir, classResults.getFilename(reportType) + ".html")));
+            }
+        }
+        generatePages(model, pages);
+    }
+
+    /**
+     * Generates the index and the pages of the given classes and of their packages. The pages of
+     * the given classes and packages that are no longer in the model are deleted, as are output
+     * files of the classes that have none now, see {@link #setOutputFiles}.
+     */
+    void generatePages(AllTestResultsExt model, Set<String> classNames) {
+        Set<String> removedClasses = new HashSet<>(classNames);
+        Set<String> removedPackages = new HashSet<>();
+        for (String className : classNames) {
+            removedPackages.add(PackageTestResultsExt.getName(AllTestResultsExt.getPackageName(className)));
+        }
+        List<PageTask<?>> pages = new ArrayList<>();
+        for (PackageTestResultsExt packageResults : model.getPackages()) {
+            if (!removedPackages.remove(packageResults.getName())) {
+                continue;
+            }
+            pages.add(new PageTask<>(packageResults, new PackagePageRendererExt(reportType),
+                    new File(reportDir, packageResults.getFilename(reportType) + ".html")));
+            for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                if (removedClasses.remove(classResults.getName())) {
+                    pages.add(new PageTask<>(classResults, new ClassPageRendererExt(reportType, stackTraceReferences),
+                            new File(reportDir, classResults.getFilename(reportType) + ".html")));
+                    if (classResults.getStandardOutputFile() == null) {
+                        deleteReportFile(classResults.getName() + ".stdout.txt");
+                    }
+                    if (classResults.getStandardErrorFile() == null) {
+                        deleteReportFile(classResults.getName() + ".stderr.txt");
+                    }
+                }
             }
         }
+        for (String className : removedClasses) {
+            deleteReportFile(className + ".html");
+            deleteReportFile(className + ".stdout.txt");
+            deleteReportFile(className + ".stderr.txt");
+        }
+        for (String packageName : removedPackages) {
+            deleteReportFile(packageName + ".html");
+        }
+        generatePages(model, pages);
     }
 
-    private String getScreenshotByClass(String className, String testName) {
-        String path = screenshotMap.get(className + '#' + testName);
-        return path != null ? path : "";
+    private void deleteReportFile(String fileName) {
+        File file = new File(reportDir, fileName);
+        if (file.exists() && !file.delete()) {
+            throw new GenerateReportException(String.format("Could not delete '%s'.", file));
+        }
     }
 
-    private void generateFiles(AllTestResultsExt model) {
+    /**
+     * Computes the aggregates of a model loaded with deferred aggregation, see
+     * {@link #setDeferredAggregation}, and generates the index, then the given pages, and copies
+     * the resources of the pages once. With parallelism above 1 both run on a fork-join pool; with
+     * virtual threads the pages and the resources are written on them instead, see
+     * {@link #setVirtualThreads}. Each page has a
+     * renderer of its own and pages only read the model, so the files are the same as when they
+     * are generated one by one. The temporary file of the text arena of the model is closed once
+     * the pages are written, see {@link TextArena#release}.
+     */
+    private void generatePages(AllTestResultsExt model, List<PageTask<?>> pages) {
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        int platformThreads = Math.max(parallelism, 4 * Runtime.getRuntime().availableProcessors());
+        ExecutorService writers = virtualThreads ? VirtualThreads.newPerTaskExecutor(platformThreads) : pool;
         try {
-            generatePage(model, new OverviewPageRendererExt(reportType), new File(reportDir, "index.html"));
-            for (PackageTestResultsExt packageResults : model.getPackages()) {
-                generatePage(packageResults, new PackagePageRendererExt(reportType),
-                        new File(reportDir, packageResults.getFilename(reportType) + ".html"));
-                for (ClassTestResultsExt classResults : packageResults.getClasses()) {
-                    generatePage(classResults, new ClassPageRendererExt(reportType),
-                            new File(reportDir, classResults.getFilename(reportType) + ".html"));
+            if (model.isAggregationDeferred()) {
+                model.aggregate(pool);
+            }
+            PageTask<?> index = new PageTask<>(model, new OverviewPageRendererExt(reportType),
+                    new File(reportDir, "index.html"));
+            if (writers == null) {
+                htmlRenderer.copyResources(reportDir);
+                index.call();
+                for (PageTask<?> page : pages) {
+                    page.call();
                 }
+                return;
             }
-        } catch (Exception e) {
-            throw new GenerateReportException(
-                    String.format("Could not generate test report to '%s'.", reportDir), e);
+            List<Future<?>> tasks = new ArrayList<>(pages.size() + 8);
+            tasks.addAll(htmlRenderer.copyResources(reportDir, writers));
+            if (virtualThreads) {
+                tasks.add(writers.submit(index));
+            } else {
+                index.call();
+            }
+            for (PageTask<?> page : pages) {
+                tasks.add(writers.submit(page));
+            }
+            for (Future<?> task : tasks) {
+                getResult(task);
+            }
+        } finally {
+            if (writers != null && writers != pool) {
+                writers.shutdownNow();
+            }
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            model.getTextArena().release();
+        }
+    }
+
+    /**
+     * Writes the page of the results with a renderer that is not shared with other pages.
+     */
+    private final class PageTask<T extends CompositeTestResultsExt> implements Callable<Void> {
+        private final T results;
+        private final PageRendererExt<T> renderer;
+        private final File outputFile;
+
+        PageTask(T results, PageRendererExt<T> renderer, File outputFile) {
+            this.results = results;
+            this.renderer = renderer;
+            this.outputFile = outputFile;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                generatePage(results, renderer, outputFile);
+            } catch (Exception e) {
+                throw new GenerateReportException(
+                        String.format("Could not generate test report to '%s'.", reportDir), e);
+            }
+            return null;
         }
     }
 
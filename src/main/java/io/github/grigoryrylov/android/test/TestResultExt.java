@@ -2,74 +2,72 @@ package io.github.grigoryrylov.android.test;
 
 import org.gradle.fork.api.tasks.testing.TestResult;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Created by grishberg on 08.04.18.
+ * <p>
+ * View of a row of the {@link TestResultStore} of its class.
  */
 public class TestResultExt extends TestResultModel implements Comparable<TestResultExt> {
-    private final long duration;
-    private final String device;
-    private final String project;
-    private final String flavor;
     final ClassTestResultsExt classResults;
-    final List<TestResultExt.TestFailure> failures = new ArrayList<>();
-    final List<TestResultExt> ignoredTests = new ArrayList<>();
-    final String name;
-    private boolean ignored;
+    private final int row;
 
+    /**
+     * Adds a row for the test to the results of its class, which counts it once it is passed to
+     * {@link ClassTestResultsExt#addTest}.
+     */
     public TestResultExt(String name, long duration, String device, String project, String flavor,
                          ClassTestResultsExt classResults) {
-        this.name = name;
-        this.duration = duration;
-        this.device = device;
-        this.project = project;
-        this.flavor = flavor;
+        this(classResults, classResults.getStore().add(name, duration, device, project, flavor));
+    }
+
+    TestResultExt(ClassTestResultsExt classResults, int row) {
         this.classResults = classResults;
+        this.row = row;
     }
 
     public Object getId() {
-        return name;
+        return getName();
     }
 
     public String getName() {
-        return name;
+        return classResults.getStore().getName(row);
     }
 
     public String getDevice() {
-        return device;
+        return classResults.getStore().getDevice(row);
     }
 
     public String getProject() {
-        return project;
+        return classResults.getStore().getProject(row);
     }
 
     public String getFlavor() {
-        return flavor;
+        return classResults.getStore().getFlavor(row);
     }
 
     @Override
     public String getTitle() {
-        return String.format("Test %s", name);
+        return String.format("Test %s", getName());
     }
 
     @Override
     public TestResult.ResultType getResultType() {
-        if (ignored) {
+        if (isIgnored()) {
             return TestResult.ResultType.SKIPPED;
         }
-        return failures.isEmpty() ? TestResult.ResultType.SUCCESS : TestResult.ResultType.FAILURE;
+        return hasFailures() ? TestResult.ResultType.FAILURE : TestResult.ResultType.SUCCESS;
     }
 
     @Override
     public long getDuration() {
-        return duration;
+        return classResults.getStore().getDuration(row);
     }
 
     @Override
     public String getFormattedDuration() {
-        return ignored ? "-" : super.getFormattedDuration();
+        return isIgnored() ? "-" : super.getFormattedDuration();
     }
 
     public ClassTestResultsExt getClassResults() {
@@ -77,20 +75,53 @@ public class TestResultExt extends TestResultModel implements Comparable<TestRes
     }
 
     public List<TestResultExt.TestFailure> getFailures() {
-        return failures;
+        return classResults.getStore().getFailures(row);
     }
 
     public void addFailure(String message, String stackTrace,
                            String deviceName, String projectName, String flavorName,
                            String screenshotPath) {
-        classResults.failed(this, deviceName, projectName, flavorName);
-        failures.add(new TestResultExt.TestFailure(message, stackTrace, null, screenshotPath));
+        addFailure(message, stackTrace, null, deviceName, projectName, flavorName, screenshotPath);
+    }
+
+    /**
+     * @param stackTrace the trace, or a {@link SourceText} to leave it in the result file.
+     */
+    void addFailure(String message, CharSequence stackTrace, String exceptionType,
+                    String deviceName, String projectName, String flavorName,
+                    String screenshotPath) {
+        addFailure(new TestResultExt.TestFailure(message, classResults.getStore().getFailureTexts(),
+                stackTrace, exceptionType, screenshotPath), deviceName, projectName, flavorName);
+    }
+
+    /**
+     * @param stackTraceId id of a trace already in the {@link FailureTextStore} of the model.
+     */
+    void addFailure(String message, int stackTraceId, String exceptionType,
+                    String deviceName, String projectName, String flavorName,
+                    String screenshotPath) {
+        addFailure(new TestResultExt.TestFailure(message, classResults.getStore().getFailureTexts(),
+                stackTraceId, exceptionType, screenshotPath), deviceName, projectName, flavorName);
+    }
+
+    private void addFailure(TestFailure failure, String deviceName, String projectName, String flavorName) {
+        if (classResults.getStore().addFailure(row, failure) && !classResults.isAggregationDeferred()) {
+            classResults.failed(this, deviceName, projectName, flavorName);
+        }
+    }
+
+    boolean hasFailures() {
+        return classResults.getStore().hasFailures(row);
+    }
+
+    boolean isIgnored() {
+        return classResults.getStore().isIgnored(row);
     }
 
     public void ignored() {
-        ignored = true;
-        classResults.addIgnoredTest(this);
-        ignoredTests.add(this);
+        if (classResults.getStore().setIgnored(row) && !classResults.isAggregationDeferred()) {
+            classResults.addIgnoredTest(this);
+        }
     }
 
     @Override
@@ -100,28 +131,43 @@ public class TestResultExt extends TestResultModel implements Comparable<TestRes
             return diff;
         }
 
-        diff = name.compareTo(testResult.name);
+        diff = getName().compareTo(testResult.getName());
         if (diff != 0) {
             return diff;
         }
 
-        diff = device.compareTo(testResult.device);
+        diff = getDevice().compareTo(testResult.getDevice());
         if (diff != 0) {
             return diff;
         }
 
-        diff = flavor.compareTo(testResult.flavor);
+        diff = getFlavor().compareTo(testResult.getFlavor());
         if (diff != 0) {
             return diff;
         }
 
-        Integer thisIdentity = System.identityHashCode(this);
-        int otherIdentity = System.identityHashCode(testResult);
-        return thisIdentity.compareTo(otherIdentity);
+        return Integer.compare(row, testResult.row);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TestResultExt)) {
+            return false;
+        }
+        TestResultExt other = (TestResultExt) o;
+        return classResults == other.classResults && row == other.row;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(classResults) * 31 + row;
     }
 
     public static class TestFailure {
         private final String message;
+        private final FailureTextStore stackTraces;
+        private final int stackTraceId;
+        /** Trace of a failure that is not part of a model, {@code null} if kept in {@link #stackTraces}. */
         private final String stackTrace;
         private final String exceptionType;
         private final String screenshotPath;
@@ -129,17 +175,58 @@ public class TestResultExt extends TestResultModel implements Comparable<TestRes
         public TestFailure(String message, String stackTrace, String exceptionType,
                            String screenshotPath) {
             this.message = message;
+            this.stackTraces = null;
+            this.stackTraceId = -1;
             this.stackTrace = stackTrace;
             this.exceptionType = exceptionType;
             this.screenshotPath = screenshotPath;
         }
 
+        /**
+         * Keeps the stack trace in {@code stackTraces}, shared by the failures of a model.
+         */
+        TestFailure(String message, FailureTextStore stackTraces, CharSequence stackTrace, String exceptionType,
+                    String screenshotPath) {
+            this(message, stackTraces, stackTraces.add(stackTrace), exceptionType, screenshotPath);
+        }
+
+        /**
+         * Refers to a trace already kept in {@code stackTraces} by its id.
+         */
+        TestFailure(String message, FailureTextStore stackTraces, int stackTraceId, String exceptionType,
+                    String screenshotPath) {
+            this.message = message;
+            this.stackTraces = stackTraces;
+            this.stackTraceId = stackTraceId;
+            this.stackTrace = null;
+            this.exceptionType = exceptionType;
+            this.screenshotPath = screenshotPath;
+        }
+
         public String getMessage() {
             return message;
         }
 
         public String getStackTrace() {
-            return stackTrace;
+            return stackTraces != null ? stackTraces.getText(stackTraceId) : stackTrace;
+        }
+
+        /**
+         * @return handle of the stack trace, to be streamed instead of decoded into a string.
+         */
+        TextArena.Text getStackTraceText() {
+            if (stackTraces == null) {
+                return stackTrace != null ? TextArena.wrap(stackTrace) : null;
+            }
+            return stackTraces.get(stackTraceId);
+        }
+
+        /**
+         * @return id of the stack trace, equal for the failures of a model with the same trace,
+         * -1 for a failure that is not part of a model.
+         */
+        int getStackTraceId() {
+            return stackTraceId;
         }
 
         public String getExceptionType() {
@@ -0,0 +1,142 @@
+package io.github.grigoryrylov.android.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Columns holding the test results of one class, a row per test execution. Names are stored as
+ * ids of the model's {@link SymbolTable} and the state of a row as flags, so a row takes a few
+ * dozen bytes; {@link TestResultExt} is a view of a row.
+ * <p>
+ * Failures are kept in a list of their own, chained per row, as most rows have none. Their stack
+ * traces are kept once per model by the {@link FailureTextStore}.
+ */
+final class TestResultStore {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final byte IGNORED = 1;
+
+    private final SymbolTable symbols;
+    private final FailureTextStore failureTexts;
+    private int size;
+    private int[] names = new int[INITIAL_CAPACITY];
+    private int[] devices = new int[INITIAL_CAPACITY];
+    private int[] projects = new int[INITIAL_CAPACITY];
+    private int[] flavors = new int[INITIAL_CAPACITY];
+    private long[] durations = new long[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    /** Index of the row's first failure in {@link #failures} or -1. */
+    private int[] firstFailures = new int[INITIAL_CAPACITY];
+    private final List<TestResultExt.TestFailure> failures = new ArrayList<>(0);
+    /** Index of the next failure of the same row or -1, parallel to {@link #failures}. */
+    private int[] nextFailures = new int[0];
+
+    TestResultStore(SymbolTable symbols, FailureTextStore failureTexts) {
+        this.symbols = symbols;
+        this.failureTexts = failureTexts;
+    }
+
+    /**
+     * @return index of the new row.
+     */
+    int add(String name, long duration, String device, String project, String flavor) {
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            devices = Arrays.copyOf(devices, capacity);
+            projects = Arrays.copyOf(projects, capacity);
+            flavors = Arrays.copyOf(flavors, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            firstFailures = Arrays.copyOf(firstFailures, capacity);
+        }
+        names[size] = symbols.getId(name);
+        devices[size] = symbols.getId(device);
+        projects[size] = symbols.getId(project);
+        flavors[size] = symbols.getId(flavor);
+        durations[size] = duration;
+        firstFailures[size] = -1;
+        return size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String getName(int row) {
+        return symbols.getSymbol(names[row]);
+    }
+
+    String getDevice(int row) {
+        return symbols.getSymbol(devices[row]);
+    }
+
+    String getProject(int row) {
+        return symbols.getSymbol(projects[row]);
+    }
+
+    String getFlavor(int row) {
+        return symbols.getSymbol(flavors[row]);
+    }
+
+    long getDuration(int row) {
+        return durations[row];
+    }
+
+    boolean isIgnored(int row) {
+        return (flags[row] & IGNORED) != 0;
+    }
+
+    /**
+     * @return {@code false} if the row already was ignored.
+     */
+    boolean setIgnored(int row) {
+        if (isIgnored(row)) {
+            return false;
+        }
+        flags[row] |= IGNORED;
+        return true;
+    }
+
+    FailureTextStore getFailureTexts() {
+        return failureTexts;
+    }
+
+    boolean hasFailures(int row) {
+        return firstFailures[row] != -1;
+    }
+
+    /**
+     * @return {@code true} if this is the first failure of the row.
+     */
+    boolean addFailure(int row, TestResultExt.TestFailure failure) {
+        int index = failures.size();
+        failures.add(failure);
+        if (index == nextFailures.length) {
+            nextFailures = Arrays.copyOf(nextFailures, Math.max(INITIAL_CAPACITY, index * 2));
+        }
+        nextFailures[index] = -1;
+        if (firstFailures[row] == -1) {
+            firstFailures[row] = index;
+            return true;
+        }
+        int last = firstFailures[row];
+        while (nextFailures[last] != -1) {
+            last = nextFailures[last];
+        }
+        nextFailures[last] = index;
+        return false;
+    }
+
+    List<TestResultExt.TestFailure> getFailures(int row) {
+        if (firstFailures[row] == -1) {
+            return Collections.emptyList();
+        }
+        List<TestResultExt.TestFailure> rowFailures = new ArrayList<>(1);
+        for (int index = firstFailures[row]; index != -1; index = nextFailures[index]) {
+            rowFailures.add(failures.get(index));
+        }
+        return rowFailures;
+    }
+}
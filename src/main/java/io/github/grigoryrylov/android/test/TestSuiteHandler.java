@@ -0,0 +1,45 @@
+package io.github.grigoryrylov.android.test;
+
+/**
+ * Receives the content of a single JUnit XML result file as it is read.
+ * <p>
+ * Events arrive in document order. {@link #onFailure} always refers to the test case
+ * passed to the latest {@link #onTestCase} call.
+ * <p>
+ * Failure bodies and output may refer to the file being read, for example when it is memory
+ * mapped. They are valid during the call and until the file has been merged, handlers that
+ * keep them longer should convert them with {@code toString()}. Failure bodies left in the file,
+ * see {@link FastSuiteParser#setLazyStackTraces}, stay valid as long as the file is unchanged.
+ */
+public interface TestSuiteHandler {
+    /**
+     * Called with the value of root element's {@code name} attribute.
+     */
+    void onTestSuite(String suiteName);
+
+    /**
+     * Called for each {@code <properties>} block, missing values are reported as empty strings.
+     */
+    void onProperties(String deviceName, String projectName, String flavorName);
+
+    /**
+     * Called for each executed test case.
+     *
+     * @param duration test duration in milliseconds.
+     */
+    void onTestCase(String className, String testName, long duration);
+
+    /**
+     * Called for each {@code <failure>} of the latest executed test case.
+     */
+    void onFailure(String message, CharSequence stackTrace);
+
+    /**
+     * Called for each {@code <testcase>} with {@code <skipped>} mark and each {@code <ignored-testcase>}.
+     */
+    void onSkippedTestCase(String className, String testName);
+
+    void onStandardOutput(CharSequence text);
+
+    void onStandardError(CharSequence text);
+}
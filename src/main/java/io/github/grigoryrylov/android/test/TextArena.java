@@ -0,0 +1,361 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only store of large text, such as stack traces and standard output, encoded as UTF-8 in
+ * direct buffers outside the Java heap. Each added text is a {@link Text} handle that is decoded
+ * when it is used, in chunks written to a {@link Writer} without building a {@code String}.
+ * <p>
+ * Buffers grow from a few kilobytes up to {@value #MAX_BLOCK_SIZE} bytes and are freed with the
+ * arena by the garbage collector. Once the JVM limit of direct memory is reached, further buffers
+ * map a deleted temporary file, which the operating system pages out as needed; {@link #release}
+ * closes the file once the report is written, the mapped texts stay readable. A text may span
+ * buffers; a buffer boundary never splits the encoding of a character, so each part decodes on
+ * its own. Safe for concurrent use.
+ */
+final class TextArena {
+    private static final Logger logger = Logger.getLogger(TextArena.class.getName());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MIN_BLOCK_SIZE = 8 * 1024;
+    private static final int MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final Text EMPTY = new ArenaText(null, 0, 0);
+
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private ByteBuffer current;
+    private FileChannel mappedFile;
+    private long mappedSize;
+
+    /**
+     * @return handle of the text, valid as long as the arena.
+     */
+    Text add(CharSequence text) {
+        if (text instanceof XmlText) {
+            return add((XmlText) text);
+        }
+        if (text.length() == 0) {
+            return EMPTY;
+        }
+        CharBuffer in = CharBuffer.wrap(text);
+        synchronized (this) {
+            if (current == null || !current.hasRemaining()) {
+                addBlock();
+            }
+            long start = address(blocks.size() - 1, current.position());
+            encoder.reset();
+            while (encoder.encode(in, current, true).isOverflow()) {
+                addBlock();
+            }
+            while (encoder.flush(current).isOverflow()) {
+                addBlock();
+            }
+            return new ArenaText(this, start, address(blocks.size() - 1, current.position()));
+        }
+    }
+
+    /**
+     * Copies the text through {@link XmlText#writeTo(WritableByteChannel)}, so the bytes that need
+     * no decoding go from the result file straight into the blocks.
+     */
+    private Text add(XmlText text) {
+        if (text.getEncodedLength() == 0) {
+            return EMPTY;
+        }
+        synchronized (this) {
+            if (current == null || !current.hasRemaining()) {
+                addBlock();
+            }
+            long start = address(blocks.size() - 1, current.position());
+            try {
+                text.writeTo(new BlockChannel());
+            } catch (IOException e) {
+                throw new GenerateReportException(e.getMessage(), e);
+            }
+            long end = address(blocks.size() - 1, current.position());
+            return end != start ? new ArenaText(this, start, end) : EMPTY;
+        }
+    }
+
+    /**
+     * Appends UTF-8 bytes to the blocks, starting a new block before a character that does not
+     * fit the current one. Only used while holding the lock of the arena.
+     */
+    private final class BlockChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            while (src.hasRemaining()) {
+                if (src.remaining() <= current.remaining()) {
+                    current.put(src);
+                    break;
+                }
+                int cut = src.position() + current.remaining();
+                // a continuation byte at the cut belongs to a character begun before it
+                for (int i = 0; i < 3 && cut > src.position() && (src.get(cut) & 0xC0) == 0x80; i++) {
+                    cut--;
+                }
+                ByteBuffer part = src.duplicate();
+                part.limit(cut);
+                current.put(part);
+                src.position(cut);
+                addBlock();
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private void addBlock() {
+        int size = current == null ? MIN_BLOCK_SIZE : Math.min(current.capacity() * 2, MAX_BLOCK_SIZE);
+        current = null;
+        if (mappedFile == null) {
+            try {
+                current = ByteBuffer.allocateDirect(size);
+            } catch (OutOfMemoryError e) {
+                logger.log(Level.FINE, "Direct memory exhausted, keeping further text in a temporary file.", e);
+            }
+        }
+        if (current == null) {
+            current = map(size);
+        }
+        blocks.add(current);
+    }
+
+    private ByteBuffer map(int size) {
+        try {
+            if (mappedFile == null) {
+                File file = File.createTempFile("test-report-text", ".bin");
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+                mappedFile = randomAccessFile.getChannel();
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+            ByteBuffer buffer = mappedFile.map(FileChannel.MapMode.READ_WRITE, mappedSize, size);
+            mappedSize += size;
+            return buffer;
+        } catch (IOException e) {
+            throw new GenerateReportException("Could not create a temporary file for test output.", e);
+        }
+    }
+
+    /**
+     * Closes the temporary file of mapped buffers, if any. Texts that were added stay readable
+     * and texts added later map a new file if they need one.
+     */
+    synchronized void release() {
+        if (mappedFile == null) {
+            return;
+        }
+        try {
+            mappedFile.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not close the temporary file of test output.", e);
+        }
+        mappedFile = null;
+        mappedSize = 0;
+    }
+
+    /**
+     * @return text that is kept as the string itself instead of in an arena.
+     */
+    static Text wrap(String text) {
+        return new StringText(text);
+    }
+
+    /**
+     * @return bytes of the block between {@code start} and {@code end}, or its written bytes from
+     * {@code start} if {@code end} is -1.
+     */
+    private synchronized ByteBuffer read(int block, int start, int end) {
+        ByteBuffer buffer = blocks.get(block).duplicate();
+        buffer.limit(end == -1 ? buffer.position() : end);
+        buffer.position(start);
+        return buffer;
+    }
+
+    private static long address(int block, int offset) {
+        return (long) block << 32 | offset;
+    }
+
+    private static int block(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Text kept by an arena, or left in the result file it was read from, see {@link SourceText}.
+     */
+    abstract static class Text {
+        /**
+         * Decodes the text into {@code out} in chunks.
+         */
+        abstract void writeTo(Writer out) throws IOException;
+
+        abstract boolean isEmpty();
+
+        /**
+         * Compares the text with {@code other} while decoding it, without building a {@code String}.
+         */
+        boolean contentEquals(String other) {
+            ContentComparison comparison = new ContentComparison(other);
+            try {
+                writeTo(comparison);
+            } catch (IOException e) {
+                throw new GenerateReportException(e.getMessage(), e);
+            }
+            return comparison.matches();
+        }
+
+        @Override
+        public String toString() {
+            StringWriter text = new StringWriter();
+            try {
+                writeTo(text);
+            } catch (IOException e) {
+                throw new GenerateReportException(e.getMessage(), e);
+            }
+            return text.toString();
+        }
+    }
+
+    private static final class ArenaText extends Text {
+        private final TextArena arena;
+        private final long start;
+        private final long end;
+
+        ArenaText(TextArena arena, long start, long end) {
+            this.arena = arena;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        void writeTo(Writer out) throws IOException {
+            if (arena == null) {
+                return;
+            }
+            CharsetDecoder decoder = UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+            for (int block = block(start); block <= block(end); block++) {
+                ByteBuffer bytes = arena.read(block, block == block(start) ? offset(start) : 0,
+                        block == block(end) ? offset(end) : -1);
+                decoder.reset();
+                while (decoder.decode(bytes, chars, true).isOverflow()) {
+                    drain(chars, out);
+                }
+                while (decoder.flush(chars).isOverflow()) {
+                    drain(chars, out);
+                }
+                drain(chars, out);
+            }
+        }
+
+        private static void drain(CharBuffer chars, Writer out) throws IOException {
+            chars.flip();
+            out.write(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+            chars.clear();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return start == end;
+        }
+    }
+
+    private static final class StringText extends Text {
+        private final String text;
+
+        StringText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void writeTo(Writer out) throws IOException {
+            out.write(text);
+        }
+
+        @Override
+        boolean isEmpty() {
+            return text.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Writer comparing the characters written to it with a string.
+     */
+    private static final class ContentComparison extends Writer {
+        private final String expected;
+        private int position;
+        private boolean mismatch;
+
+        ContentComparison(String expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            if (mismatch || position + length > expected.length()) {
+                mismatch = true;
+                return;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[offset + i] != expected.charAt(position + i)) {
+                    mismatch = true;
+                    return;
+                }
+            }
+            position += length;
+        }
+
+        boolean matches() {
+            return !mismatch && position == expected.length();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
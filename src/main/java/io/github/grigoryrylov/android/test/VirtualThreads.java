@@ -0,0 +1,45 @@
+package io.github.grigoryrylov.android.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates executors running each task on a virtual thread of its own, looked up by reflection as
+ * the library is compiled for Java 8.
+ */
+final class VirtualThreads {
+    private static final Logger logger = Logger.getLogger(VirtualThreads.class.getName());
+    private static final Method NEW_PER_TASK_EXECUTOR = findPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @param platformThreads number of threads of the pool used instead where virtual threads are
+     *                        not available.
+     * @return executor starting a virtual thread per task, or a fixed pool of platform threads.
+     */
+    static ExecutorService newPerTaskExecutor(int platformThreads) {
+        if (NEW_PER_TASK_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                // preview releases throw unless virtual threads are enabled
+                logger.log(Level.FINE, "Virtual threads are not available, using platform threads.", e);
+            }
+        }
+        return Executors.newFixedThreadPool(platformThreads);
+    }
+
+    private static Method findPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
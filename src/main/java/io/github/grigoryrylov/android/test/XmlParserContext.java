@@ -0,0 +1,158 @@
+package io.github.grigoryrylov.android.test;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Caches JAXP factories and pools of parsers, so that service lookup and configuration happen
+ * once per parser instead of once per result file. Parsers are borrowed and returned around
+ * each file, so they are reused by any thread, including the threads of later reports.
+ * <p>
+ * DTD loading and namespace handling are turned off, result files use neither.
+ * Instances are safe to share between threads and between reports.
+ */
+public final class XmlParserContext {
+    private static final String LOAD_EXTERNAL_DTD =
+            "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+    private static final XmlParserContext DEFAULT = new XmlParserContext();
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final XPathFactory xPathFactory;
+
+    private final Pool<DocumentBuilder> documentBuilders = new Pool<DocumentBuilder>() {
+        @Override
+        DocumentBuilder create() {
+            try {
+                synchronized (documentBuilderFactory) {
+                    return documentBuilderFactory.newDocumentBuilder();
+                }
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final Pool<PropertyExpressions> propertyExpressions = new Pool<PropertyExpressions>() {
+        @Override
+        PropertyExpressions create() {
+            XPath xPath;
+            synchronized (xPathFactory) {
+                xPath = xPathFactory.newXPath();
+            }
+            try {
+                return new PropertyExpressions(xPath);
+            } catch (XPathExpressionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final Pool<XMLInputFactory> inputFactories = new Pool<XMLInputFactory>() {
+        @Override
+        XMLInputFactory create() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            return factory;
+        }
+    };
+
+    public XmlParserContext() {
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(false);
+        documentBuilderFactory.setValidating(false);
+        try {
+            documentBuilderFactory.setFeature(LOAD_EXTERNAL_DTD, false);
+        } catch (ParserConfigurationException e) {
+            // not supported by this implementation, DTD will be loaded
+        }
+        xPathFactory = XPathFactory.newInstance();
+    }
+
+    /**
+     * Returns the context shared by all reports.
+     */
+    public static XmlParserContext getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Borrows a document builder, to be returned with {@link #releaseDocumentBuilder}.
+     */
+    DocumentBuilder acquireDocumentBuilder() {
+        return documentBuilders.acquire();
+    }
+
+    /**
+     * Resets the document builder and returns it to the pool.
+     */
+    void releaseDocumentBuilder(DocumentBuilder documentBuilder) {
+        documentBuilder.reset();
+        documentBuilders.release(documentBuilder);
+    }
+
+    /**
+     * Borrows compiled {@code property[@name=...]} expressions, to be returned with
+     * {@link #releasePropertyExpressions}.
+     */
+    PropertyExpressions acquirePropertyExpressions() {
+        return propertyExpressions.acquire();
+    }
+
+    void releasePropertyExpressions(PropertyExpressions expressions) {
+        propertyExpressions.release(expressions);
+    }
+
+    /**
+     * Borrows a StAX factory, to be returned with {@link #releaseInputFactory} once the reader is created.
+     */
+    XMLInputFactory acquireInputFactory() {
+        return inputFactories.acquire();
+    }
+
+    void releaseInputFactory(XMLInputFactory factory) {
+        inputFactories.release(factory);
+    }
+
+    /**
+     * Objects that are not thread safe, each used by one thread at a time. The pool holds at
+     * most as many objects as were in use at the same time.
+     */
+    private abstract static class Pool<T> {
+        private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+
+        abstract T create();
+
+        T acquire() {
+            T object = idle.poll();
+            return object != null ? object : create();
+        }
+
+        void release(T object) {
+            idle.offer(object);
+        }
+    }
+
+    /**
+     * Compiled expressions selecting device, project and flavor of a {@code <properties>} element.
+     */
+    static final class PropertyExpressions {
+        final XPathExpression device;
+        final XPathExpression project;
+        final XPathExpression flavor;
+
+        private PropertyExpressions(XPath xPath) throws XPathExpressionException {
+            device = xPath.compile("property[@name='device']/@value");
+            project = xPath.compile("property[@name='project']/@value");
+            flavor = xPath.compile("property[@name='flavor']/@value");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Element content that is still encoded in the bytes of a result file, such as a failure body
+ * or system-out in a memory mapped file. The text is decoded each time it is passed on with
+ * {@link #appendTo} or one of the {@code writeTo} methods. Its length is counted once, and the
+ * decoded text is kept after the first random access through {@link #charAt} or {@link #subSequence}.
+ * <p>
+ * Only valid while the underlying buffer is, callers must not keep it after the file is merged.
+ */
+final class XmlText implements CharSequence {
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+    private int length = -1;
+    private String decoded;
+
+    XmlText(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Appends {@code text} to {@code out}, decoding {@link XmlText} directly into the builder.
+     */
+    static void append(CharSequence text, StringBuilder out) {
+        if (text instanceof XmlText) {
+            ((XmlText) text).appendTo(out);
+        } else {
+            out.append(text);
+        }
+    }
+
+    void appendTo(StringBuilder out) {
+        JUnitXmlTokenizer.decodeContent(buffer, start, end, out);
+    }
+
+    /**
+     * Decodes the text into {@code out} in chunks.
+     */
+    void writeTo(Writer out) throws IOException {
+        JUnitXmlTokenizer.decodeContent(buffer, start, end, out);
+    }
+
+    /**
+     * Writes the text to {@code out} as UTF-8, copying the bytes of the buffer where they need no
+     * decoding.
+     */
+    void writeTo(WritableByteChannel out) throws IOException {
+        JUnitXmlTokenizer.writeContent(buffer, start, end, out);
+    }
+
+    /**
+     * @return reference to the bytes of the text in {@code file}, which the buffer has to hold from
+     * its first byte on.
+     */
+    SourceText inFile(File file, long lastModified) {
+        String text = toString();
+        return new SourceText(file, lastModified, start, end, text.length(),
+                FailureTextStore.normalize(text).hashCode());
+    }
+
+    int getEncodedLength() {
+        return end - start;
+    }
+
+    @Override
+    public int length() {
+        if (length == -1) {
+            if (decoded != null) {
+                length = decoded.length();
+            } else {
+                CharCount count = new CharCount();
+                try {
+                    writeTo(count);
+                } catch (IOException e) {
+                    // counting does not fail
+                    throw new IllegalStateException(e);
+                }
+                length = count.count;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return decoded().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decoded().subSequence(start, end);
+    }
+
+    private String decoded() {
+        if (decoded == null) {
+            decoded = toString();
+        }
+        return decoded;
+    }
+
+    @Override
+    public String toString() {
+        if (decoded != null) {
+            return decoded;
+        }
+        StringBuilder out = new StringBuilder(end - start);
+        appendTo(out);
+        return out.toString();
+    }
+
+    /**
+     * Writer counting the characters written to it.
+     */
+    private static final class CharCount extends Writer {
+        int count;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -34,6 +34,7 @@ function select(i) {
     var h2 = document.createElement('H2');
     h2.appendChild(document.createTextNode(this.titles[i]));
     this.headers[i].appendChild(h2);
+    loadOutputs(this.tabs[i]);
 }
 
 function deselectAll() {
@@ -99,3 +100,86 @@ function findChildElements(container, name, targetClass) {
     }
     return elements;
 }
+
+var OUTPUT_CHUNK_SIZE = 1024 * 1024;
+
+/* Fills the output blocks of a tab with the first chunk of their file when the tab is first opened. */
+function loadOutputs(tab) {
+    var blocks = tab.getElementsByTagName('PRE');
+    for (var i = 0; i < blocks.length; i++) {
+        var block = blocks[i];
+        if (block.className == 'output' && !block.outputState) {
+            block.outputState = {
+                size: parseInt(block.getAttribute('data-size'), 10),
+                loaded: 0,
+                decoder: window.TextDecoder ? new TextDecoder('utf-8') : null
+            };
+            loadOutputChunk(block);
+        }
+    }
+}
+
+/* Requests the next chunk of the file as a byte range, or takes it from the whole file if the server sent it. */
+function loadOutputChunk(block) {
+    var state = block.outputState;
+    var end = Math.min(state.loaded + OUTPUT_CHUNK_SIZE, state.size);
+    if (state.file) {
+        appendOutput(block, state.file.subarray(state.loaded, end), end);
+        return;
+    }
+    if (!state.decoder || !window.Uint8Array) {
+        showOutputError(block);
+        return;
+    }
+    var request = new XMLHttpRequest();
+    try {
+        request.open('GET', block.getAttribute('data-src'), true);
+        request.responseType = 'arraybuffer';
+        request.setRequestHeader('Range', 'bytes=' + state.loaded + '-' + (end - 1));
+    } catch (e) {
+        showOutputError(block);
+        return;
+    }
+    request.onload = function () {
+        if (request.status != 206 && request.status != 200 && request.status != 0 || !request.response) {
+            showOutputError(block);
+            return;
+        }
+        var bytes = new Uint8Array(request.response);
+        if (request.status != 206) {
+            state.file = bytes;
+            bytes = bytes.subarray(state.loaded, end);
+        }
+        appendOutput(block, bytes, end);
+    };
+    request.onerror = function () {
+        showOutputError(block);
+    };
+    request.send(null);
+}
+
+function appendOutput(block, bytes, end) {
+    var state = block.outputState;
+    state.loaded = end;
+    var done = state.loaded >= state.size;
+    block.appendChild(document.createTextNode(state.decoder.decode(bytes, {stream: !done})));
+    var next = block.parentNode.nextSibling;
+    if (next && next.className == 'outputMore') {
+        next.parentNode.removeChild(next);
+    }
+    if (!done) {
+        var more = document.createElement('BUTTON');
+        more.className = 'outputMore';
+        more.appendChild(document.createTextNode('Show more (' + state.loaded + ' of ' + state.size + ' bytes shown)'));
+        more.onclick = function () {
+            more.disabled = true;
+            loadOutputChunk(block);
+            return false;
+        };
+        block.parentNode.parentNode.insertBefore(more, block.parentNode.nextSibling);
+    }
+}
+
+function showOutputError(block) {
+    block.appendChild(document.createTextNode('The output could not be loaded here, open the file below instead.'));
+}
@@ -0,0 +1,110 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class BoundedTextTest {
+    @Test
+    public void testLongTextKeepsHeadAndTail() {
+        assertEquals("0123456789", BoundedText.truncate("0123456789", 10));
+        assertEquals("01234\n... 15 characters truncated ...\nklmno",
+                BoundedText.truncate("0123456789abcdefghijklmno", 10));
+
+        BoundedText text = new BoundedText(7);
+        text.append("0123".toCharArray(), 0, 4);
+        text.append("456789");
+        text.append(new StringBuilder("abc"));
+        assertEquals("0123\n... 6 characters truncated ...\nabc", text.toString());
+
+        assertEquals("ab\n... 6 characters truncated ...\ncd",
+                BoundedText.truncate("ab\ud83d\ude00xy\ud83d\ude00cd", 5));
+    }
+
+    @Test
+    public void testXmlTextIsTruncatedWhileDecoded() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            xml.append("line ").append(i).append(" &amp; more\n");
+            expected.append("line ").append(i).append(" & more\n");
+        }
+        byte[] bytes = xml.toString().getBytes("UTF-8");
+        BoundedText text = new BoundedText(100);
+        text.append("head ");
+        text.append(new XmlText(ByteBuffer.wrap(bytes), 0, bytes.length));
+        assertEquals(BoundedText.truncate("head " + expected, 100), text.toString());
+    }
+
+    @Test
+    public void testParsersApplyTheSameLimit() throws Exception {
+        StringBuilder trace = new StringBuilder("java.lang.AssertionError: expected:&lt;");
+        for (int i = 0; i < 1000; i++) {
+            trace.append("line ").append(i).append(" &amp; more\n");
+        }
+        trace.append("&gt;<![CDATA[\tat Login.<init>(Login.java:3)\n]]>");
+        byte[] xml = ("<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"com.example.LoginTest\" tests=\"1\">\n"
+                + "  <testcase name=\"testLogin\" classname=\"com.example.LoginTest\" time=\"1\">"
+                + "<failure message=\"failed\">" + trace + "</failure></testcase>\n"
+                + "  <system-out>short output</system-out>\n"
+                + "</testsuite>\n").getBytes("UTF-8");
+
+        List<String> texts = new ArrayList<>();
+        for (ParserType parserType : ParserType.values()) {
+            RecordingHandler handler = new RecordingHandler();
+            parserType.newParser(XmlParserContext.getDefault(), 200).parse(new ByteArrayInputStream(xml), handler);
+            texts.add(handler.texts.toString());
+        }
+
+        assertEquals(texts.get(0), texts.get(1));
+        assertEquals(texts.get(0), texts.get(2));
+        assertEquals("[java.lang.AssertionError: expected:<line 0 & more\nline 1 & more\nline 2 & more\n"
+                + "line 3 & more\nline 4 &\n... 15758 characters truncated ...\nore\nline 996 & more\n"
+                + "line 997 & more\nline 998 & more\nline 999 & more\n>\tat Login.<init>(Login.java:3)\n"
+                + ", short output]", texts.get(0));
+    }
+
+    private static class RecordingHandler implements TestSuiteHandler {
+        final List<String> texts = new ArrayList<>();
+
+        @Override
+        public void onTestSuite(String suiteName) {
+        }
+
+        @Override
+        public void onProperties(String deviceName, String projectName, String flavorName) {
+        }
+
+        @Override
+        public void onTestCase(String className, String testName, long duration) {
+        }
+
+        @Override
+        public void onFailure(String message, CharSequence stackTrace) {
+            texts.add(stackTrace.toString());
+        }
+
+        @Override
+        public void onSkippedTestCase(String className, String testName) {
+        }
+
+        @Override
+        public void onStandardOutput(CharSequence text) {
+            texts.add(text.toString());
+        }
+
+        @Override
+        public void onStandardError(CharSequence text) {
+            texts.add(text.toString());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a model aggregated in one pass equals the model updated for each test.
+ */
+@RunWith(JUnit4.class)
+public class DeferredAggregationTest {
+
+    @Test
+    public void testAggregatesMatchEagerModel() throws Exception {
+        AllTestResultsExt eager = new AllTestResultsExt();
+        fill(eager);
+
+        AllTestResultsExt deferred = new AllTestResultsExt(true);
+        fill(deferred);
+        deferred.aggregate(null);
+        assertEquals(ModelDumper.dump(eager), ModelDumper.dump(deferred));
+
+        AllTestResultsExt parallel = new AllTestResultsExt(true);
+        fill(parallel);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallel.aggregate(executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(ModelDumper.dump(eager), ModelDumper.dump(parallel));
+    }
+
+    private static void fill(AllTestResultsExt model) {
+        String[] devices = {"nexus_5", "pixel_3", "pixel_4"};
+        String[] flavors = {"main", "free", "paid"};
+        for (int d = 0; d < devices.length; d++) {
+            for (int c = 0; c < 12; c++) {
+                String className = (c % 3 == 0 ? "" : "com.example.p" + c % 4 + ".") + "Class" + c;
+                for (int t = 0; t < 6; t++) {
+                    TestResultExt test = model.addTest(className, "test" + t, c * 10 + t + d,
+                            devices[d], "app", flavors[(c + t) % flavors.length]);
+                    if ((c + t + d) % 5 == 0) {
+                        test.addFailure("failed", "stack trace", devices[d], "app", test.getFlavor(), "");
+                    }
+                    if ((c + t) % 7 == 0) {
+                        test.addFailure("failed again", "stack trace", devices[d], "app", test.getFlavor(), "");
+                    }
+                    if ((c * t + d) % 4 == 1) {
+                        test.ignored();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class FailureTextStoreTest {
+    private static final String STACK_TRACE = "java.lang.IllegalStateException: not logged in\n"
+            + "\tat com.example.LoginRule.before(LoginRule.java:12)\n";
+
+    private File resultDir;
+    private File reportDir;
+
+    @Before
+    public void setUp() throws IOException {
+        resultDir = TestFiles.createTempDir("failure-text-results");
+        reportDir = TestFiles.createTempDir("failure-text-report");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(resultDir);
+        TestFiles.delete(reportDir);
+    }
+
+    @Test
+    public void testEqualTracesAreKeptOnce() {
+        AllTestResultsExt model = new AllTestResultsExt();
+        TestResultExt first = model.addTest("com.example.LoginTest", "testFirst", 1, "nexus_5", "app", "main");
+        first.addFailure("not logged in", STACK_TRACE, "nexus_5", "app", "main", "");
+        TestResultExt second = model.addTest("com.example.LoginTest", "testSecond", 1, "nexus_5", "app", "main");
+        second.addFailure("not logged in", STACK_TRACE.replace("\n", "\r\n"), "nexus_5", "app", "main", "");
+
+        TestResultExt.TestFailure firstFailure = first.getFailures().get(0);
+        TestResultExt.TestFailure secondFailure = second.getFailures().get(0);
+        assertEquals(firstFailure.getStackTraceId(), secondFailure.getStackTraceId());
+        assertEquals(STACK_TRACE, firstFailure.getStackTrace());
+        assertEquals(STACK_TRACE, secondFailure.getStackTrace());
+    }
+
+    @Test
+    public void testFailureOutsideOfModelKeepsItsTrace() {
+        String stackTrace = STACK_TRACE.replace("\n", "\r\n");
+        TestResultExt.TestFailure failure = new TestResultExt.TestFailure("not logged in", stackTrace,
+                "java.lang.IllegalStateException", "");
+        assertEquals(stackTrace, failure.getStackTrace());
+        assertEquals(stackTrace, failure.getStackTraceText().toString());
+        assertNull(new TestResultExt.TestFailure("failed", null, null, "").getStackTrace());
+    }
+
+    @Test
+    public void testRepeatedTracesAreRenderedAsReferences() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"com.example.LoginTest\" tests=\"3\">\n"
+                + "  <properties><property name=\"device\" value=\"nexus_5\" /></properties>\n");
+        for (int i = 0; i < 3; i++) {
+            xml.append("  <testcase name=\"test").append(i).append("\" classname=\"com.example.LoginTest\" time=\"1\">")
+                    .append("<failure message=\"not logged in\">").append(STACK_TRACE).append("</failure></testcase>\n");
+        }
+        xml.append("</testsuite>\n");
+        Files.write(new File(resultDir, "TEST-nexus_5.xml").toPath(), xml.toString().getBytes("UTF-8"));
+
+        TestReportExt report = new TestReportExt(resultDir, reportDir);
+        report.setStackTraceReferences(true);
+        report.generateReport();
+
+        String classPage = TestFiles.read(new File(reportDir, "com.example.LoginTest.html"));
+        assertEquals(1, TestFiles.count(classPage, "LoginRule.java:12"));
+        assertEquals(2, TestFiles.count(classPage, "Same stack trace as"));
+        assertTrue(classPage.contains("<a href=\"#stackTrace-"));
+    }
+}
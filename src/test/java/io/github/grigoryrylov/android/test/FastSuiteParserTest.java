@@ -0,0 +1,187 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link FastSuiteParser} builds exactly the same model as {@link DomSuiteParser}.
+ */
+@RunWith(JUnit4.class)
+public class FastSuiteParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String PROPERTIES = "<properties>"
+            + "<property name=\"device\" value=\"pixel\"/>"
+            + "<property name='flavor' value='main'/>"
+            + "<property name=\"project\" value=\"app\"/>"
+            + "</properties>";
+
+    static final String[] CORPUS = {
+            // minimal file with no declaration
+            "<testsuite name=\"a.B\">" + PROPERTIES
+                    + "<testcase name=\"t1\" classname=\"a.B\" time=\"0.5\"/></testsuite>",
+            // failures with entities, character references and CDATA
+            "<?xml version='1.0' encoding='UTF-8' ?>\n"
+                    + "<testsuite name=\"a.B\" tests=\"2\">\n  " + PROPERTIES + "\n"
+                    + "  <testcase name=\"t1\" classname=\"a.B\" time=\"1.144\">\n"
+                    + "    <failure message=\"expected &lt;1&gt; &amp; &quot;2&quot; &apos;3&apos;\">"
+                    + "java.lang.AssertionError: &#60;&#x3E;\n\tat a.B.t1(B.java:10)\n"
+                    + "<![CDATA[<raw> & ]]]]><![CDATA[>]]></failure>\n"
+                    + "    <failure>second</failure>\n"
+                    + "  </testcase>\n"
+                    + "  <testcase name=\"t2\" classname=\"a.C\" time=\"12\" />\n"
+                    + "</testsuite>\n",
+            // line ends and whitespace in attribute values
+            "<?xml version=\"1.0\"?>\r\n<testsuite name=\"a.B\">\r\n" + PROPERTIES + "\r\n"
+                    + "<testcase name=\"t1\" classname=\"a.B\" time=\"0.001\">\r\n"
+                    + "<failure message=\"line\r\nbreak\ttab&#10;ref\">one\r\ntwo\rthree\n</failure>\r\n"
+                    + "</testcase >\r\n<system-out>out\r\n</system-out>\r\n</testsuite>\r\n",
+            // multi-byte characters
+            "\uFEFF<testsuite name=\"\u043F\u0430\u043A\u0435\u0442.\u0422\u0435\u0441\u0442\">"
+                    + PROPERTIES
+                    + "<testcase name=\"\u0442\u0435\u0441\u0442 \uD83D\uDE00\" classname=\"\u043F.\u041A\" time=\"2.5\">"
+                    + "<failure message=\"\u00E9\u00E8\">\u65E5\u672C &#x1F600;</failure></testcase>"
+                    + "</testsuite>",
+            // skipped and ignored tests, comments and processing instructions
+            "<?xml version='1.0' encoding='utf-8'?><!-- header -->\n<?pi data?>\n"
+                    + "<testsuite name=\"a.B\">" + PROPERTIES
+                    + "<testcase name=\"s\" classname=\"a.B\" time=\"0.2\"><skipped/><failure>x</failure></testcase>"
+                    + "<testcase name=\"t\" classname=\"a.B\" time=\"0.3\"><!-- <failure> --><?pi?></testcase>"
+                    + "<ignored-testcase name=\"i\" classname=\"a.D\"/>"
+                    + "<system-out>one</system-out><system-out>two</system-out>"
+                    + "<system-err><![CDATA[err <1>]]></system-err>"
+                    + "</testsuite>\n<!-- trailer -->\n",
+            // several property blocks, missing values and unknown elements
+            "<testsuite name=\"Default\">"
+                    + "<properties><property name=\"device\"/><property name=\"device\" value=\"d1\"/></properties>"
+                    + "<properties><property name=\"device\" value=\"d2\"/>"
+                    + "<property name=\"flavor\" value=\"debug\"/><property name=\"project\" value=\"p\"/>"
+                    + "</properties>"
+                    + "<testcase name=\"u\" classname=\"Default\" time=\"0\"/>"
+                    + "<testcase name=\"t\" classname=\"Default\" time=\"1,234.5\">"
+                    + "<failure message=\"m\">a<details>b<more>c</more></details>d</failure>"
+                    + "<error message=\"e\">ignored</error></testcase>"
+                    + "</testsuite>",
+            // empty suite
+            "<testsuite name=\"a.Empty\" tests=\"0\">" + PROPERTIES + "</testsuite>",
+    };
+
+    @Test
+    public void testCorpusMatchesDomParser() throws Exception {
+        for (String document : CORPUS) {
+            byte[] bytes = document.getBytes(UTF_8);
+            assertTrue(document, tokenizes(bytes));
+            assertEquals(document, dump(new DomSuiteParser(), bytes), dump(new FastSuiteParser(), bytes));
+        }
+    }
+
+    @Test
+    public void testResultFilesMatchDomParser() throws Exception {
+        File[] files = new File("for_test").listFiles();
+        for (File file : files) {
+            if (file.getName().endsWith(".xml")) {
+                byte[] bytes = readFile(file);
+                assertTrue(file.getName(), tokenizes(bytes));
+                assertEquals(file.getName(), dump(new DomSuiteParser(), bytes),
+                        dump(new FastSuiteParser(), bytes));
+            }
+        }
+    }
+
+    @Test
+    public void testReferencedTextMatchesDomParser() throws Exception {
+        for (String document : CORPUS) {
+            byte[] bytes = document.getBytes(UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            AllTestResultsExt model = new AllTestResultsExt();
+            Map<String, String> screenshots = new HashMap<>();
+            screenshots.put("a.B#t1", "shot.png");
+            assertTrue(document, new FastSuiteParser().tryParse(buffer, 0, bytes.length,
+                    new ModelSuiteHandler(model, screenshots), true));
+            MappedResultFile.release(buffer);
+            assertEquals(document, dump(new DomSuiteParser(), bytes), ModelDumper.dump(model));
+        }
+    }
+
+    @Test
+    public void testChunksMatchDomParser() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (final String document : CORPUS) {
+                final byte[] bytes = document.getBytes(UTF_8);
+                String chunked = pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        FastSuiteParser parser = new FastSuiteParser();
+                        parser.setChunkSize(1);
+                        return dump(parser, bytes);
+                    }
+                }).get();
+                assertEquals(document, dump(new DomSuiteParser(), bytes), chunked);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFallsBackToJaxp() throws Exception {
+        String[] unsupported = {
+                "<?xml version=\"1.0\"?><!DOCTYPE testsuite><testsuite name=\"a.B\">" + PROPERTIES
+                        + "<testcase name=\"t\" classname=\"a.B\" time=\"1\"/></testsuite>",
+                "<testsuite name=\"a.B\">" + PROPERTIES
+                        + "<testcase name=\"t\" classname=\"a.B\" time=\"1\"><failure>&#1;</failure>"
+                        + "</testcase></testsuite>",
+        };
+        for (String document : unsupported) {
+            byte[] bytes = document.getBytes(UTF_8);
+            assertFalse(document, tokenizes(bytes));
+        }
+        byte[] doctype = unsupported[0].getBytes(UTF_8);
+        assertEquals(dump(new DomSuiteParser(), doctype), dump(new FastSuiteParser(), doctype));
+
+        String latin1 = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><testsuite name=\"a.B\">"
+                + PROPERTIES + "<testcase name=\"caf\u00E9\" classname=\"a.B\" time=\"1\"/></testsuite>";
+        byte[] bytes = latin1.getBytes(Charset.forName("ISO-8859-1"));
+        assertFalse(tokenizes(bytes));
+        assertEquals(dump(new DomSuiteParser(), bytes), dump(new FastSuiteParser(), bytes));
+    }
+
+    private static boolean tokenizes(byte[] bytes) throws Exception {
+        SuiteResults results = new SuiteResults();
+        return new FastSuiteParser().tryParse(ByteBuffer.wrap(bytes), 0, bytes.length, results);
+    }
+
+    static String dump(SuiteParser parser, byte[] bytes) throws Exception {
+        Map<String, String> screenshots = new HashMap<>();
+        screenshots.put("a.B#t1", "shot.png");
+        AllTestResultsExt model = new AllTestResultsExt();
+        parser.parse(new ByteArrayInputStream(bytes), new ModelSuiteHandler(model, screenshots));
+        return ModelDumper.dump(model);
+    }
+
+    static byte[] readFile(File file) throws Exception {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            return ByteStreams.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
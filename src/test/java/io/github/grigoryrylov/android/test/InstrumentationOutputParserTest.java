@@ -0,0 +1,68 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link InstrumentationOutputParser} maps the status codes of {@code am instrument -r}
+ * to test results, across several runs logged one after another.
+ */
+@RunWith(JUnit4.class)
+public class InstrumentationOutputParserTest {
+    private static final String CLASS_NAME = "com.example.SampleTest";
+
+    @Test
+    public void testStatusCodes() throws Exception {
+        String output = ""
+                + status("passedTest", 1) + status("passedTest", 0)
+                + status("failedTest", 1)
+                + "INSTRUMENTATION_STATUS: class=" + CLASS_NAME + "\r\n"
+                + "INSTRUMENTATION_STATUS: stack=java.lang.AssertionError: expected\r\n"
+                + "\tat com.example.SampleTest.failedTest(SampleTest.java:10)\r\n"
+                + "INSTRUMENTATION_STATUS: test=failedTest\r\n"
+                + "INSTRUMENTATION_STATUS_CODE: -2\r\n"
+                + status("ignoredTest", 1) + status("ignoredTest", -3)
+                + status("assumedTest", 1) + status("assumedTest", -4)
+                + "INSTRUMENTATION_RESULT: stream=\r\n"
+                + "OK (4 tests)\r\n"
+                + "INSTRUMENTATION_CODE: -1\r\n"
+                + status("crashedTest", 1)
+                + "INSTRUMENTATION_RESULT: shortMsg=Process crashed.\r\n"
+                + "INSTRUMENTATION_CODE: 0\r\n";
+        AllTestResultsExt model = new AllTestResultsExt();
+        new InstrumentationOutputParser(false).parse(new ByteArrayInputStream(output.getBytes("UTF-8")),
+                new ModelSuiteHandler(model, Collections.<String, String>emptyMap()));
+
+        ClassTestResultsExt classResults = model.getPackages().iterator().next().getClasses().iterator().next();
+        assertEquals(5, classResults.getTestCount());
+        assertEquals(2, classResults.getIgnoredCount());
+        List<TestResultExt> failures = new ArrayList<>(classResults.getFailures());
+        assertEquals(2, failures.size());
+        assertEquals("crashedTest", failures.get(0).getName());
+        assertEquals("Test did not complete: Process crashed.", failures.get(0).getFailures().get(0).getMessage());
+        assertEquals("failedTest", failures.get(1).getName());
+        assertEquals("java.lang.AssertionError: expected", failures.get(1).getFailures().get(0).getMessage());
+        assertEquals("java.lang.AssertionError: expected\n\tat com.example.SampleTest.failedTest(SampleTest.java:10)",
+                failures.get(1).getFailures().get(0).getStackTrace());
+        for (TestResultExt test : classResults.getResults()) {
+            assertEquals(test.getName(), 0, test.getDuration());
+        }
+    }
+
+    private static String status(String testName, int code) {
+        return "INSTRUMENTATION_STATUS: class=" + CLASS_NAME + "\r\n"
+                + "INSTRUMENTATION_STATUS: current=1\r\n"
+                + "INSTRUMENTATION_STATUS: stream=\r\n"
+                + CLASS_NAME + ":\r\n"
+                + "INSTRUMENTATION_STATUS: test=" + testName + "\r\n"
+                + "INSTRUMENTATION_STATUS_CODE: " + code + "\r\n";
+    }
+}
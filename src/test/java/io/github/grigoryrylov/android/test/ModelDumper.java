@@ -0,0 +1,85 @@
+package io.github.grigoryrylov.android.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints everything the report renders from {@link AllTestResultsExt}, so that models can be
+ * compared with {@code assertEquals}.
+ */
+final class ModelDumper {
+
+    private ModelDumper() {
+    }
+
+    static String dump(AllTestResultsExt model) {
+        StringBuilder out = new StringBuilder();
+        dumpComposite(model, "", out);
+        for (PackageTestResultsExt packageResults : model.getPackages()) {
+            dumpComposite(packageResults, "  ", out);
+            for (ClassTestResultsExt classResults : packageResults.getClasses()) {
+                dumpComposite(classResults, "    ", out);
+                out.append("      stdout=").append(classResults.getStandardOutput()).append('\n');
+                out.append("      stderr=").append(classResults.getStandardError()).append('\n');
+                Map<String, Map<String, TestResultExt>> results = classResults.getTestResultsMap();
+                List<String> devices = new ArrayList<>(results.keySet());
+                Collections.sort(devices);
+                for (String device : devices) {
+                    List<String> names = new ArrayList<>(results.get(device).keySet());
+                    Collections.sort(names);
+                    for (String name : names) {
+                        dumpTest(results.get(device).get(name), out);
+                    }
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void dumpComposite(CompositeTestResultsExt results, String indent, StringBuilder out) {
+        out.append(indent).append(results.getName())
+                .append(" tests=").append(results.getTestCount())
+                .append(" failures=").append(results.getFailureCount())
+                .append(" ignored=").append(results.getIgnoredCount())
+                .append(" duration=").append(results.getDuration())
+                .append(" status=").append(results.getStatusClass())
+                .append('\n');
+        for (TestResultExt failure : results.getFailures()) {
+            out.append(indent).append("  failed ").append(failure.getClassResults().getName())
+                    .append('#').append(failure.getName()).append(" on ").append(failure.getDevice())
+                    .append('\n');
+        }
+        for (DeviceTestResultsExt device : results.getResultsPerDevices().values()) {
+            dumpAggregate("device", device, indent, out);
+        }
+        for (VariantTestResultsExt variant : results.getResultsPerVariants().values()) {
+            dumpAggregate("variant", variant, indent, out);
+        }
+    }
+
+    private static void dumpAggregate(String kind, CompositeTestResultsExt results, String indent,
+                                      StringBuilder out) {
+        out.append(indent).append("  ").append(kind).append(' ').append(results.getName())
+                .append(" tests=").append(results.getTestCount())
+                .append(" failures=").append(results.getFailureCount())
+                .append(" ignored=").append(results.getIgnoredCount())
+                .append(" duration=").append(results.getDuration())
+                .append('\n');
+    }
+
+    private static void dumpTest(TestResultExt test, StringBuilder out) {
+        out.append("      ").append(test.getDevice()).append(' ').append(test.getName())
+                .append(' ').append(test.getProject()).append(':').append(test.getFlavor())
+                .append(' ').append(test.getFormattedResultType())
+                .append(" duration=").append(test.getDuration())
+                .append('\n');
+        for (TestResultExt.TestFailure failure : test.getFailures()) {
+            out.append("        failure message=").append(failure.getMessage())
+                    .append(" screenshot=").append(failure.getScreenshotPath())
+                    .append(" trace=").append(failure.getStackTrace())
+                    .append('\n');
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a model read from a {@link ModelSnapshot} equals the snapshotted one and is reported
+ * like it.
+ */
+@RunWith(JUnit4.class)
+public class ModelSnapshotTest {
+    private static final String CLASS_NAME = "com.example.LoggingTest";
+
+    @Test
+    public void testSnapshotRestoresModel() throws Exception {
+        Map<String, String> screenshots = new HashMap<>();
+        screenshots.put("com.github.grishberg.instrumentaltestsample.ExampleInstrumentedTest#failedTest1", "shot.png");
+        AllTestResultsExt model = new AllTestResultsExt();
+        for (File file : new File("for_test").listFiles()) {
+            if (file.getName().endsWith(".xml")) {
+                InputStream inputStream = new FileInputStream(file);
+                try {
+                    new FastSuiteParser().parse(inputStream, new ModelSuiteHandler(model, screenshots));
+                } finally {
+                    inputStream.close();
+                }
+            }
+        }
+
+        File snapshotFile = File.createTempFile("model", ".snapshot");
+        try {
+            ModelSnapshot.write(model, snapshotFile);
+            assertEquals(ModelDumper.dump(model), ModelDumper.dump(ModelSnapshot.read(snapshotFile)));
+        } finally {
+            snapshotFile.delete();
+        }
+    }
+
+    @Test
+    public void testSharedStackTracesStayShared() throws Exception {
+        AllTestResultsExt model = new AllTestResultsExt();
+        String trace = "java.lang.IllegalStateException: not ready\n\tat A.b(A.java:1)";
+        for (int i = 0; i < 3; i++) {
+            model.addTest(CLASS_NAME, "test" + i, i, "nexus_5", "app", "main")
+                    .addFailure("failed", trace, "nexus_5", "app", "main", "");
+        }
+        model.addTest(CLASS_NAME, "testOther", 3, "nexus_5", "app", "main")
+                .addFailure("failed", "java.lang.AssertionError", "nexus_5", "app", "main", "");
+        model.addTest(CLASS_NAME, "testNoTrace", 4, "nexus_5", "app", "main")
+                .addFailure("failed", null, "nexus_5", "app", "main", "");
+
+        File snapshotFile = File.createTempFile("model", ".snapshot");
+        try {
+            ModelSnapshot.write(model, snapshotFile);
+            AllTestResultsExt restored = ModelSnapshot.read(snapshotFile);
+            assertEquals(ModelDumper.dump(model), ModelDumper.dump(restored));
+            Map<String, TestResultExt.TestFailure> failures = new HashMap<>();
+            for (TestResultExt test : restored.getPackages().iterator().next().getClasses().iterator().next()
+                    .getResults()) {
+                failures.put(test.getName(), test.getFailures().get(0));
+            }
+            int sharedId = failures.get("test0").getStackTraceId();
+            assertEquals(sharedId, failures.get("test1").getStackTraceId());
+            assertEquals(sharedId, failures.get("test2").getStackTraceId());
+            assertNotEquals(sharedId, failures.get("testOther").getStackTraceId());
+            assertNull(failures.get("testNoTrace").getStackTrace());
+        } finally {
+            snapshotFile.delete();
+        }
+    }
+
+    @Test
+    public void testReportFromSnapshotKeepsModelOptions() throws Exception {
+        File resultDir = TestFiles.createTempDir("snapshot-results");
+        File expectedDir = TestFiles.createTempDir("snapshot-expected");
+        File reportDir = TestFiles.createTempDir("snapshot-report");
+        File snapshotFile = File.createTempFile("model", ".snapshot");
+        try {
+            String xml = "<?xml version='1.0' encoding='UTF-8' ?>\n"
+                    + "<testsuite name=\"" + CLASS_NAME + "\" tests=\"2\">\n"
+                    + "  <properties><property name=\"device\" value=\"nexus_5\" /></properties>\n"
+                    + "  <testcase name=\"testLogs\" classname=\"" + CLASS_NAME + "\" time=\"1\" />\n"
+                    + "  <testcase name=\"testFails\" classname=\"" + CLASS_NAME + "\" time=\"2\">\n"
+                    + "    <failure message=\"failed\">java.lang.AssertionError: failed\n\tat A.b(A.java:1)</failure>\n"
+                    + "  </testcase>\n"
+                    + "  <system-out>logged line\n</system-out>\n"
+                    + "</testsuite>\n";
+            Files.write(new File(resultDir, "TEST-nexus_5.xml").toPath(), xml.getBytes("UTF-8"));
+
+            newReport(resultDir, expectedDir).generateReport();
+            newReport(resultDir, expectedDir).writeSnapshot(snapshotFile);
+            newReport(resultDir, reportDir).generateReportFromSnapshot(snapshotFile);
+
+            TestFiles.assertSamePages(TestFiles.readPages(expectedDir), TestFiles.readPages(reportDir));
+            assertEquals("logged line\n", TestFiles.read(new File(reportDir, CLASS_NAME + ".stdout.txt")));
+            assertTrue(TestFiles.read(new File(reportDir, CLASS_NAME + ".html"))
+                    .contains("data-src=\"" + CLASS_NAME + ".stdout.txt\""));
+        } finally {
+            TestFiles.delete(resultDir);
+            TestFiles.delete(expectedDir);
+            TestFiles.delete(reportDir);
+            snapshotFile.delete();
+        }
+    }
+
+    private static TestReportExt newReport(File resultDir, File reportDir) {
+        TestReportExt report = new TestReportExt(resultDir, reportDir);
+        report.setOutputFiles(true);
+        report.setDeferredAggregation(true);
+        return report;
+    }
+}
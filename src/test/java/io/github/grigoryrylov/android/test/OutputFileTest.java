@@ -0,0 +1,80 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that output written to files while loading equals the output an XML parser reads.
+ */
+@RunWith(JUnit4.class)
+public class OutputFileTest {
+    private static final String CLASS_NAME = "com.example.LoggingTest";
+
+    private File resultDir;
+    private File reportDir;
+
+    @Before
+    public void setUp() throws IOException {
+        resultDir = TestFiles.createTempDir("output-file-results");
+        reportDir = TestFiles.createTempDir("output-file-report");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(resultDir);
+        TestFiles.delete(reportDir);
+    }
+
+    @Test
+    public void testOutputIsWrittenNextToClassPage() throws IOException {
+        writeResults("TEST-nexus_5.xml", "<system-out><![CDATA[plain line\r\n\u00e9 & <b>]]>"
+                + "escaped &lt;tag&gt; &amp; &#x4e2d;\r\nlast line\n</system-out>"
+                + "<system-err><![CDATA[error line\n]]></system-err>");
+        writeResults("TEST-pixel_3.xml", "<system-out>second file\n</system-out>");
+
+        for (ParserType parserType : new ParserType[]{ParserType.FAST, ParserType.STAX}) {
+            TestReportExt report = new TestReportExt(resultDir, reportDir);
+            report.setParserType(parserType);
+            report.setOutputFiles(true);
+            report.generateReport();
+
+            assertEquals("plain line\n\u00e9 & <b>escaped <tag> & \u4e2d\nlast line\nsecond file\n",
+                    read(CLASS_NAME + ".stdout.txt"));
+            assertEquals("error line\n", read(CLASS_NAME + ".stderr.txt"));
+            String classPage = read(CLASS_NAME + ".html");
+            assertTrue(classPage.contains("data-src=\"" + CLASS_NAME + ".stdout.txt\""));
+            assertTrue(classPage.contains("Standard error"));
+        }
+
+        TestReportExt report = new TestReportExt(resultDir, reportDir);
+        TestFiles.delete(reportDir);
+        report.generateReport();
+        assertFalse(new File(reportDir, CLASS_NAME + ".stdout.txt").exists());
+        assertFalse(read(CLASS_NAME + ".html").contains("Standard output"));
+    }
+
+    private void writeResults(String fileName, String output) throws IOException {
+        String xml = "<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"" + CLASS_NAME + "\" tests=\"1\">\n"
+                + "  <properties><property name=\"device\" value=\"" + fileName + "\" /></properties>\n"
+                + "  <testcase name=\"testLogs\" classname=\"" + CLASS_NAME + "\" time=\"1\" />\n"
+                + "  " + output + "\n"
+                + "</testsuite>\n";
+        Files.write(new File(resultDir, fileName).toPath(), xml.getBytes("UTF-8"));
+    }
+
+    private String read(String fileName) throws IOException {
+        return TestFiles.read(new File(reportDir, fileName));
+    }
+}
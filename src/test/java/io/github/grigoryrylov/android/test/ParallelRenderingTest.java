@@ -0,0 +1,60 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Checks that reports rendered in parallel or on virtual threads are the same as reports rendered
+ * one by one.
+ */
+@RunWith(JUnit4.class)
+public class ParallelRenderingTest {
+
+    @Test
+    public void testParallelPagesMatchSerialPages() throws IOException {
+        Map<String, String> serialPages = renderPages(1, false);
+        TestFiles.assertSamePages(serialPages, renderPages(4, false));
+        TestFiles.assertSamePages(serialPages, renderPages(1, true));
+        TestFiles.assertSamePages(serialPages, renderPages(4, true));
+    }
+
+    private static Map<String, String> renderPages(int parallelism, boolean virtualThreads) throws IOException {
+        File reportDir = TestFiles.createTempDir("parallel-report");
+        try {
+            TestReportExt report = new TestReportExt(reportDir, reportDir);
+            report.setParallelism(parallelism);
+            report.setVirtualThreads(virtualThreads);
+            report.setStackTraceReferences(true);
+            report.generateFiles(newModel());
+            Map<String, String> pages = TestFiles.readPages(reportDir);
+            for (String resource : new String[]{"js/report.js", "css/style.css", "css/base-style.css"}) {
+                pages.put(resource, TestFiles.read(new File(reportDir, resource)));
+            }
+            return pages;
+        } finally {
+            TestFiles.delete(reportDir);
+        }
+    }
+
+    private static AllTestResultsExt newModel() {
+        AllTestResultsExt model = new AllTestResultsExt();
+        String[] devices = {"nexus_5", "pixel_3"};
+        for (String device : devices) {
+            for (int c = 0; c < 40; c++) {
+                String className = "com.example.p" + c % 5 + ".Class" + c;
+                for (int t = 0; t < 5; t++) {
+                    TestResultExt test = model.addTest(className, "test" + t, c * 10 + t, device, "app", "main");
+                    if ((c + t) % 4 == 0) {
+                        test.addFailure("failed", "java.lang.AssertionError: " + t % 2, device, "app", "main", "");
+                    }
+                }
+            }
+        }
+        return model;
+    }
+}
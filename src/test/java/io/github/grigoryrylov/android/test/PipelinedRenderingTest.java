@@ -0,0 +1,93 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class PipelinedRenderingTest {
+    private File resultDir;
+
+    @Before
+    public void setUp() throws IOException {
+        resultDir = TestFiles.createTempDir("pipelined-results");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(resultDir);
+    }
+
+    @Test
+    public void testPipelinedReportIsTheSameAsLoadedOne() throws IOException {
+        writeSuite("TEST-1-login-nexus_5.xml", "com.example.LoginTest", "nexus_5", true);
+        writeSuite("TEST-1-login-pixel_3.xml", "com.example.LoginTest", "pixel_3", false);
+        writeSuite("TEST-2-main.xml", "com.example.ui.MainTest", "nexus_5", true);
+        writeSuite("TEST-3-settings.xml", "com.example.ui.SettingsTest", "nexus_5", false);
+
+        Map<String, String> loadedPages = renderPages(false, 1);
+        Map<String, String> pipelinedPages = renderPages(true, 3);
+
+        TestFiles.assertSamePages(loadedPages, pipelinedPages);
+    }
+
+    @Test
+    public void testReportOfMoreGroupsThanAreParsedOrRenderedAtOnceIsTheSame() throws IOException {
+        for (int i = 10; i < 40; i++) {
+            String className = "com.example.group" + i % 4 + ".Suite" + i + "Test";
+            writeSuite("TEST-" + i + "-nexus_5.xml", className, "nexus_5", i % 3 == 0);
+            writeSuite("TEST-" + i + "-pixel_3.xml", className, "pixel_3", i % 5 == 0);
+        }
+
+        TestFiles.assertSamePages(renderPages(false, 1), renderPages(true, 2));
+    }
+
+    @Test
+    public void testClassInFilesThatAreNotConsecutiveIsReported() throws IOException {
+        writeSuite("TEST-1.xml", "com.example.LoginTest", "nexus_5", false);
+        writeSuite("TEST-2.xml", "com.example.ui.MainTest", "nexus_5", false);
+        writeSuite("TEST-3.xml", "com.example.LoginTest", "pixel_3", false);
+        try {
+            renderPages(true, 2);
+            fail("expected an exception for the class in files that are not consecutive");
+        } catch (GenerateReportException e) {
+            assertTrue(e.getMessage().contains("com.example.LoginTest"));
+        }
+    }
+
+    private void writeSuite(String fileName, String className, String device, boolean failed) throws IOException {
+        String xml = "<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"" + className + "\" tests=\"2\">\n"
+                + "  <properties><property name=\"device\" value=\"" + device + "\" /></properties>\n"
+                + "  <testcase name=\"testFirst\" classname=\"" + className + "\" time=\"0.25\" />\n"
+                + "  <testcase name=\"testSecond\" classname=\"" + className + "\" time=\"0.5\">"
+                + (failed ? "<failure message=\"failed\">java.lang.AssertionError\n\tat A.b(A.java:1)\n</failure>" : "")
+                + "</testcase>\n"
+                + "  <system-out>output on " + device + "</system-out>\n"
+                + "</testsuite>\n";
+        Files.write(new File(resultDir, fileName).toPath(), xml.getBytes("UTF-8"));
+    }
+
+    private Map<String, String> renderPages(boolean pipelined, int parallelism) throws IOException {
+        File reportDir = TestFiles.createTempDir("pipelined-report");
+        try {
+            TestReportExt report = new TestReportExt(resultDir, reportDir);
+            report.setPipelinedRendering(pipelined);
+            report.setParallelism(parallelism);
+            report.generateReport();
+            return TestFiles.readPages(reportDir);
+        } finally {
+            TestFiles.delete(reportDir);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ReportRunListener} generates the report from the events of a run.
+ */
+@RunWith(JUnit4.class)
+public class ReportRunListenerTest {
+    private static final String CLASS_NAME = "com.example.SampleTest";
+
+    private File reportDir;
+
+    @Before
+    public void setUp() throws IOException {
+        reportDir = TestFiles.createTempDir("report-run-listener");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(reportDir);
+    }
+
+    @Test
+    public void testReportFromRunEvents() throws Exception {
+        ReportRunListener listener = new ReportRunListener(new TestReportExt(new File(reportDir, "missing"),
+                reportDir, Collections.singletonMap(CLASS_NAME + "#failedTest", "shots/failed.png")));
+        Description passedTest = Description.createTestDescription(CLASS_NAME, "passedTest");
+        Description failedTest = Description.createTestDescription(CLASS_NAME, "failedTest");
+
+        listener.testRunStarted(Description.createSuiteDescription(CLASS_NAME));
+        listener.testStarted(passedTest);
+        listener.testFinished(passedTest);
+        listener.testStarted(failedTest);
+        listener.testFailure(new Failure(failedTest, new IllegalStateException("expected failure")));
+        listener.testFinished(failedTest);
+        listener.testIgnored(Description.createTestDescription(CLASS_NAME, "ignoredTest"));
+        listener.testRunFinished(new Result());
+
+        String classPage = readClassPage();
+        assertTrue(classPage.contains("passedTest"));
+        assertTrue(classPage.contains("ignoredTest"));
+        assertTrue(classPage.contains("java.lang.IllegalStateException: expected failure"));
+        assertTrue(classPage.contains("shots/failed.png"));
+    }
+
+    private String readClassPage() throws IOException {
+        return TestFiles.read(new File(reportDir, CLASS_NAME + ".html"));
+    }
+}
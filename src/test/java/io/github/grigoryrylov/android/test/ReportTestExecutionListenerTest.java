@@ -0,0 +1,162 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.platform.engine.TestDescriptor;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.reporting.ReportEntry;
+import org.junit.platform.engine.support.descriptor.AbstractTestDescriptor;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.EngineDescriptor;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ReportTestExecutionListener} generates the report from the events of a test
+ * plan.
+ */
+@RunWith(JUnit4.class)
+public class ReportTestExecutionListenerTest {
+    private static final String CLASS_NAME = "com.example.SampleTest";
+    private static final String FAILING_CLASS_NAME = "com.example.FailingSetupTest";
+
+    private File reportDir;
+    private TestPlan testPlan;
+    private ReportTestExecutionListener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        reportDir = TestFiles.createTempDir("report-execution-listener");
+        TestReportExt report = new TestReportExt(new File(reportDir, "missing"), reportDir,
+                Collections.singletonMap(CLASS_NAME + "#failedTest", "shots/failed.png"));
+        report.setOutputFiles(true);
+        listener = new ReportTestExecutionListener(report);
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(reportDir);
+    }
+
+    @Test
+    public void testReportFromExecutionEvents() throws Exception {
+        EngineDescriptor engine = new EngineDescriptor(UniqueId.forEngine("sample"), "Sample");
+        TestDescriptor sampleClass = addClass(engine, CLASS_NAME, "SampleTest");
+        TestDescriptor passedTest = addMethod(sampleClass, "passedTest");
+        TestDescriptor failedTest = addMethod(sampleClass, "failedTest");
+        TestDescriptor skippedTest = addMethod(sampleClass, "skippedTest");
+        TestDescriptor abortedTest = addMethod(sampleClass, "abortedTest");
+        TestDescriptor failingClass = addClass(engine, FAILING_CLASS_NAME, "FailingSetupTest");
+        addMethod(failingClass, "notRunTest");
+        testPlan = TestPlan.from(Collections.<TestDescriptor>singletonList(engine));
+
+        listener.testPlanExecutionStarted(testPlan);
+        listener.executionStarted(identifier(engine));
+        listener.executionStarted(identifier(sampleClass));
+        run(passedTest, TestExecutionResult.successful());
+        listener.executionStarted(identifier(failedTest));
+        publish(failedTest, "stdout", "output of failedTest\n");
+        publish(failedTest, "stderr", "error of failedTest\n");
+        publish(failedTest, "other", "not output\n");
+        listener.executionFinished(identifier(failedTest),
+                TestExecutionResult.failed(new IllegalStateException("expected failure")));
+        listener.executionSkipped(identifier(skippedTest), "disabled");
+        run(abortedTest, TestExecutionResult.aborted(new IllegalStateException("assumption failed")));
+        listener.executionFinished(identifier(sampleClass), TestExecutionResult.successful());
+        listener.executionStarted(identifier(failingClass));
+        listener.executionFinished(identifier(failingClass),
+                TestExecutionResult.failed(new IllegalStateException("setup failed")));
+        listener.executionFinished(identifier(engine), TestExecutionResult.successful());
+        listener.testPlanExecutionFinished(testPlan);
+
+        String classPage = readClassPage(CLASS_NAME);
+        assertEquals("success", getStatusClass(classPage, "passedTest"));
+        assertEquals("failures", getStatusClass(classPage, "failedTest"));
+        assertEquals("skipped", getStatusClass(classPage, "skippedTest"));
+        assertEquals("skipped", getStatusClass(classPage, "abortedTest"));
+        assertTrue(classPage.contains("java.lang.IllegalStateException: expected failure"));
+        assertTrue(classPage.contains("shots/failed.png"));
+        assertEquals("output of failedTest\n", readReportFile(CLASS_NAME + ".stdout.txt"));
+        assertEquals("error of failedTest\n", readReportFile(CLASS_NAME + ".stderr.txt"));
+
+        String failingClassPage = readClassPage(FAILING_CLASS_NAME);
+        assertEquals("failures", getStatusClass(failingClassPage, "FailingSetupTest"));
+        assertTrue(failingClassPage.contains("java.lang.IllegalStateException: setup failed"));
+    }
+
+    private void run(TestDescriptor test, TestExecutionResult result) {
+        listener.executionStarted(identifier(test));
+        listener.executionFinished(identifier(test), result);
+    }
+
+    private void publish(TestDescriptor test, String key, String value) {
+        listener.reportingEntryPublished(identifier(test), ReportEntry.from(key, value));
+    }
+
+    private TestIdentifier identifier(TestDescriptor descriptor) {
+        return testPlan.getTestIdentifier(descriptor.getUniqueId().toString());
+    }
+
+    private static TestDescriptor addClass(TestDescriptor engine, String className, String displayName) {
+        TestDescriptor descriptor = new Descriptor(engine.getUniqueId().append("class", className), displayName,
+                ClassSource.from(className), TestDescriptor.Type.CONTAINER);
+        engine.addChild(descriptor);
+        return descriptor;
+    }
+
+    /**
+     * Adds a test named like the methods of the Jupiter engine, with a parameter list.
+     */
+    private static TestDescriptor addMethod(TestDescriptor testClass, String methodName) {
+        String className = ((ClassSource) testClass.getSource().get()).getClassName();
+        TestDescriptor descriptor = new Descriptor(testClass.getUniqueId().append("method", methodName + "()"),
+                methodName + "()", MethodSource.from(className, methodName), TestDescriptor.Type.TEST);
+        testClass.addChild(descriptor);
+        return descriptor;
+    }
+
+    /**
+     * @return class attribute of the result cell of the test on the page.
+     */
+    private static String getStatusClass(String classPage, String testName) {
+        int row = classPage.indexOf("<td>" + testName + "</td>");
+        assertTrue(testName, row != -1);
+        int start = classPage.indexOf("class=\"", row) + "class=\"".length();
+        return classPage.substring(start, classPage.indexOf('"', start));
+    }
+
+    private String readClassPage(String className) throws IOException {
+        return readReportFile(className + ".html");
+    }
+
+    private String readReportFile(String fileName) throws IOException {
+        return TestFiles.read(new File(reportDir, fileName));
+    }
+
+    private static final class Descriptor extends AbstractTestDescriptor {
+        private final Type type;
+
+        Descriptor(UniqueId uniqueId, String displayName, TestSource source, Type type) {
+            super(uniqueId, displayName, source);
+            this.type = type;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a report updated by {@link ReportWatcher} has the pages and output files of a
+ * report generated from scratch, after result files change or are deleted.
+ */
+@RunWith(JUnit4.class)
+public class ReportWatcherTest {
+    private File resultDir;
+    private File reportDir;
+    private File expectedDir;
+
+    @Before
+    public void setUp() throws IOException {
+        resultDir = TestFiles.createTempDir("watcher-results");
+        reportDir = TestFiles.createTempDir("watcher-report");
+        expectedDir = TestFiles.createTempDir("watcher-expected");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(resultDir);
+        TestFiles.delete(reportDir);
+        TestFiles.delete(expectedDir);
+    }
+
+    @Test
+    public void testUpdateDeletesPagesOfRemovedClasses() throws IOException {
+        File first = writeResults("TEST-first.xml", "com.example.FirstTest",
+                "<testcase name=\"testOther\" classname=\"com.other.OtherTest\" time=\"1\" />"
+                        + "<system-out>first output</system-out>");
+        File second = writeResults("TEST-second.xml", "com.example.SecondTest",
+                "<system-err>second error</system-err>");
+        ReportWatcher watcher = new ReportWatcher(newReport(reportDir), resultDir, 10);
+        watcher.reloadAll();
+        assertTrue(new File(reportDir, "com.other.OtherTest.html").isFile());
+        assertTrue(new File(reportDir, "com.example.FirstTest.stdout.txt").isFile());
+        assertTrue(new File(reportDir, "com.example.SecondTest.stderr.txt").isFile());
+
+        assertTrue(first.delete());
+        watcher.update(Collections.singleton(first));
+        assertSameReport();
+        assertFalse(new File(reportDir, "com.example.FirstTest.html").exists());
+        assertFalse(new File(reportDir, "com.example.FirstTest.stdout.txt").exists());
+        assertFalse(new File(reportDir, "com.other.html").exists());
+
+        writeResults("TEST-second.xml", "com.example.SecondTest", "");
+        watcher.update(Collections.singleton(second));
+        assertSameReport();
+        assertFalse(new File(reportDir, "com.example.SecondTest.stderr.txt").exists());
+    }
+
+    @Test
+    public void testReloadDeletesPagesOfRemovedClasses() throws IOException {
+        File first = writeResults("TEST-first.xml", "com.example.FirstTest", "");
+        writeResults("TEST-second.xml", "com.other.SecondTest", "");
+        ReportWatcher watcher = new ReportWatcher(newReport(reportDir), resultDir, 10);
+        watcher.reloadAll();
+
+        assertTrue(first.delete());
+        watcher.reloadAll();
+        assertSameReport();
+        assertFalse(new File(reportDir, "com.example.html").exists());
+    }
+
+    private void assertSameReport() throws IOException {
+        TestFiles.delete(expectedDir);
+        newReport(expectedDir).generateReport();
+        assertEquals(listFiles(expectedDir), listFiles(reportDir));
+        TestFiles.assertSamePages(TestFiles.readPages(expectedDir), TestFiles.readPages(reportDir));
+    }
+
+    private TestReportExt newReport(File dir) {
+        TestReportExt report = new TestReportExt(resultDir, dir);
+        report.setOutputFiles(true);
+        return report;
+    }
+
+    private static Set<String> listFiles(File dir) {
+        Set<String> names = new TreeSet<>();
+        for (File file : dir.listFiles()) {
+            if (file.isFile()) {
+                names.add(file.getName());
+            }
+        }
+        return names;
+    }
+
+    private File writeResults(String fileName, String className, String content) throws IOException {
+        String xml = "<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"" + className + "\" tests=\"1\">\n"
+                + "  <properties><property name=\"device\" value=\"nexus_5\" /></properties>\n"
+                + "  <testcase name=\"testPasses\" classname=\"" + className + "\" time=\"1\" />\n"
+                + "  " + content + "\n"
+                + "</testsuite>\n";
+        File file = new File(resultDir, fileName);
+        Files.write(file.toPath(), xml.getBytes("UTF-8"));
+        return file;
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link ResultArchive} reads matching entries of zip and tar archives in the order
+ * they are stored.
+ */
+@RunWith(JUnit4.class)
+public class ResultArchiveTest {
+    private File dir;
+    private File archive;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("result-archive", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        archive.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testZipEntries() throws Exception {
+        archive = new File(dir, "results.zip");
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            addZipEntry(zip, "results/", new byte[0]);
+            addZipEntry(zip, "./results/TEST-b.xml", bytes("b"));
+            addZipEntry(zip, "results/other.xml", bytes("other"));
+            addZipEntry(zip, "results/TEST-a.xml.gz", gzip(bytes("a")));
+        } finally {
+            zip.close();
+        }
+
+        assertEquals(Arrays.asList("results/TEST-b.xml=b", "results/TEST-a.xml.gz=a"), read());
+    }
+
+    @Test
+    public void testTarEntries() throws Exception {
+        String longDirectory = "results/" + new String(new char[120]).replace('\0', 'd');
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        addTarEntry(tar, "TEST-b.xml", '0', bytes("b"));
+        addTarEntry(tar, "././@LongLink", 'L', bytes(longDirectory + "/TEST-c.xml\0"));
+        addTarEntry(tar, longDirectory.substring(0, 99), '0', bytes("c"));
+        addTarEntry(tar, "TEST-ignored.txt", '0', bytes("ignored"));
+        addTarEntry(tar, "results", '5', new byte[0]);
+        tar.write(new byte[1024]);
+        archive = new File(dir, "results.tgz");
+        write(archive, gzip(tar.toByteArray()));
+
+        assertEquals(Arrays.asList("TEST-b.xml=b", longDirectory + "/TEST-c.xml=c"), read());
+    }
+
+    private List<String> read() throws IOException {
+        final List<String> entries = new ArrayList<>();
+        ResultFileFinder finder = new ResultFileFinder(Collections.singletonList(dir),
+                Arrays.asList("TEST-*.xml", "**/TEST-*.xml"), Collections.<String>emptyList());
+        new ResultArchive(archive, finder).read(new ResultArchive.EntryReader() {
+            @Override
+            public void read(File entry, InputStream inputStream) throws Exception {
+                String name = archive.toPath().relativize(entry.toPath()).toString().replace(File.separatorChar, '/');
+                entries.add(name + "=" + new String(ByteStreams.toByteArray(inputStream), "UTF-8"));
+            }
+        });
+        return entries;
+    }
+
+    private static void addZipEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static void addTarEntry(ByteArrayOutputStream tar, String name, char type, byte[] content)
+            throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = bytes(name);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        byte[] size = bytes(String.format("%011o", content.length));
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        tar.write(header);
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(content);
+        gzip.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] bytes(String value) throws IOException {
+        return value.getBytes("UTF-8");
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+}
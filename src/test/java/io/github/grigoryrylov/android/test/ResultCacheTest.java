@@ -0,0 +1,149 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ResultCache} returns the parsed results only while the result file is unchanged.
+ */
+@RunWith(JUnit4.class)
+public class ResultCacheTest {
+    private static final String SUITE = "<testsuite name=\"a.B\"><properties>"
+            + "<property name=\"device\" value=\"pixel\"/></properties>"
+            + "<testcase name=\"t1\" classname=\"a.B\" time=\"0.5\"><failure message=\"m\">trace</failure></testcase>"
+            + "<system-out>out</system-out></testsuite>";
+
+    private File dir;
+    private File resultFile;
+    private ResultCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("result-cache", "");
+        dir.delete();
+        dir.mkdirs();
+        resultFile = new File(dir, "TEST-a.B.xml");
+        write(resultFile, SUITE);
+        cache = new ResultCache(new File(dir, "cache"), ParserType.FAST.name());
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : new File(dir, "cache").listFiles()) {
+            file.delete();
+        }
+        new File(dir, "cache").delete();
+        resultFile.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testStoredResultsAreLoaded() throws Exception {
+        SuiteResults results = parse();
+        cache.store(cache.key(resultFile), results);
+
+        SuiteResults cached = cache.load(cache.key(resultFile));
+        assertNotNull(cached);
+        assertEquals(dump(results), dump(cached));
+    }
+
+    @Test
+    public void testLazyStackTracesAreLoadedAsPositions() throws Exception {
+        FastSuiteParser parser = new FastSuiteParser();
+        parser.setLazyStackTraces(true);
+        SuiteResults results = new SuiteResults();
+        parser.parse(resultFile, results);
+        cache.store(cache.key(resultFile), results);
+
+        SuiteResults cached = cache.load(cache.key(resultFile));
+        assertEquals(dump(results), dump(cached));
+        final CharSequence[] stackTrace = new CharSequence[1];
+        cached.replay(new ModelSuiteHandler(new AllTestResultsExt(), Collections.<String, String>emptyMap()) {
+            @Override
+            public void onFailure(String message, CharSequence trace) {
+                stackTrace[0] = trace;
+            }
+        });
+        assertTrue(stackTrace[0] instanceof SourceText);
+        assertEquals("trace", stackTrace[0].toString());
+    }
+
+    @Test
+    public void testChangedFileIsNotLoaded() throws Exception {
+        cache.store(cache.key(resultFile), parse());
+        long lastModified = resultFile.lastModified();
+        write(resultFile, SUITE.replace("trace", "other"));
+        resultFile.setLastModified(lastModified);
+
+        assertNull(cache.load(cache.key(resultFile)));
+    }
+
+    @Test
+    public void testCorruptEntryIsDeleted() throws Exception {
+        cache.store(cache.key(resultFile), parse());
+        File entry = new File(dir, "cache").listFiles()[0];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(entry, "rw");
+        try {
+            randomAccessFile.seek(randomAccessFile.length() - 3);
+            randomAccessFile.write('X');
+        } finally {
+            randomAccessFile.close();
+        }
+
+        assertNull(cache.load(cache.key(resultFile)));
+        assertEquals(0, new File(dir, "cache").listFiles().length);
+    }
+
+    @Test
+    public void testEntriesNotLookedUpArePruned() throws Exception {
+        File deletedFile = new File(dir, "TEST-a.C.xml");
+        write(deletedFile, SUITE.replace("a.B", "a.C"));
+        cache.store(cache.key(resultFile), parse());
+        cache.store(cache.key(deletedFile), parse());
+        deletedFile.delete();
+        assertEquals(2, new File(dir, "cache").listFiles().length);
+
+        ResultCache nextRun = new ResultCache(new File(dir, "cache"), ParserType.FAST.name());
+        assertNotNull(nextRun.load(nextRun.key(resultFile)));
+        nextRun.prune();
+
+        assertEquals(1, new File(dir, "cache").listFiles().length);
+        assertNotNull(nextRun.load(nextRun.key(resultFile)));
+    }
+
+    private SuiteResults parse() throws Exception {
+        SuiteResults results = new SuiteResults();
+        new FastSuiteParser().parse(resultFile, results);
+        return results;
+    }
+
+    private static String dump(SuiteResults results) {
+        AllTestResultsExt model = new AllTestResultsExt();
+        results.replay(new ModelSuiteHandler(model, Collections.<String, String>emptyMap()));
+        return ModelDumper.dump(model);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content.getBytes("UTF-8"));
+        } finally {
+            outputStream.close();
+        }
+    }
+}
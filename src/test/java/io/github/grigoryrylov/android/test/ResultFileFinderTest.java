@@ -0,0 +1,75 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ResultFileFinder} matches paths relative to the root against the globs.
+ */
+@RunWith(JUnit4.class)
+public class ResultFileFinderTest {
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("result-files").toFile();
+        for (String path : new String[]{"TEST-a.xml", "TEST-b.xml.gz", "other.xml", "device/TEST-c.xml",
+                "device/build/TEST-d.xml", "build/TEST-e.xml"}) {
+            File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), new byte[0]);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(root);
+    }
+
+    @Test
+    public void testGlobWithoutDirectoryMatchesRootOnly() {
+        assertEquals(Arrays.asList("TEST-a.xml", "TEST-b.xml.gz"), find("TEST-*.xml"));
+    }
+
+    @Test
+    public void testLeadingDoubleStarMatchesRootAndSubdirectories() {
+        assertEquals(Arrays.asList("TEST-a.xml", "TEST-b.xml.gz", "build/TEST-e.xml", "device/TEST-c.xml",
+                "device/build/TEST-d.xml"), find("**/TEST-*.xml"));
+        ResultFileFinder finder = new ResultFileFinder(Collections.singletonList(root),
+                Collections.singletonList("**/TEST-*.xml"), Collections.<String>emptyList());
+        assertTrue(finder.matches("TEST-a.xml"));
+        assertTrue(finder.matches("results/TEST-a.xml"));
+        assertFalse(finder.matches("other.xml"));
+    }
+
+    @Test
+    public void testLeadingDoubleStarExcludesRootDirectories() {
+        assertEquals(Arrays.asList("TEST-a.xml", "TEST-b.xml.gz", "device/TEST-c.xml"),
+                find("**/TEST-*.xml", "**/build"));
+    }
+
+    private List<String> find(String include, String... excludes) {
+        ResultFileFinder finder = new ResultFileFinder(Collections.singletonList(root),
+                Collections.singletonList(include), Arrays.asList(excludes));
+        List<String> paths = new ArrayList<>();
+        for (File file : finder.findFiles()) {
+            paths.add(root.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class SourceTextTest {
+    private static final String CLASS_NAME = "com.example.LoginTest";
+
+    private File resultDir;
+    private File reportDir;
+
+    @Before
+    public void setUp() throws IOException {
+        resultDir = TestFiles.createTempDir("source-text-results");
+        reportDir = TestFiles.createTempDir("source-text-report");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(resultDir);
+        TestFiles.delete(reportDir);
+    }
+
+    @Test
+    public void testLazyStackTracesRenderLikeLoadedOnes() throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"" + CLASS_NAME + "\" tests=\"3\">\n"
+                + "  <properties><property name=\"device\" value=\"nexus_5\" /></properties>\n");
+        String[] stackTraces = {
+                "java.lang.AssertionError: expected:&lt;1&gt; but was:&lt;2&gt;\r\n\tat Login.&lt;init&gt;(Login.java:3)\n",
+                "<![CDATA[java.lang.IllegalStateException: <not logged in> & more\n]]>",
+                "java.lang.AssertionError: expected:&lt;1&gt; but was:&lt;2&gt;\n\tat Login.&lt;init&gt;(Login.java:3)\n"
+        };
+        for (int i = 0; i < stackTraces.length; i++) {
+            xml.append("  <testcase name=\"test").append(i).append("\" classname=\"" + CLASS_NAME + "\" time=\"1\">")
+                    .append("<failure message=\"failed\">").append(stackTraces[i]).append("</failure></testcase>\n");
+        }
+        xml.append("</testsuite>\n");
+        Files.write(new File(resultDir, "TEST-nexus_5.xml").toPath(), xml.toString().getBytes("UTF-8"));
+
+        String loadedPage = renderClassPage(false);
+        String lazyPage = renderClassPage(true);
+
+        assertEquals(loadedPage, lazyPage);
+        assertTrue(lazyPage.contains("but was:&lt;2&gt;\n\tat Login.&lt;init&gt;(Login.java:3)"));
+        assertTrue(lazyPage.contains("&lt;not logged in&gt; &amp; more"));
+        assertEquals(1, TestFiles.count(lazyPage, "Same stack trace as"));
+    }
+
+    @Test
+    public void testLongTextIsDecodedFromTheFile() throws IOException {
+        StringBuilder xml = new StringBuilder("<failure>");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            xml.append("\tat Login.&lt;init&gt;(Login.java:").append(i).append(")\r\n");
+            expected.append("\tat Login.<init>(Login.java:").append(i).append(")\n");
+        }
+        byte[] bytes = xml.append("</failure>").toString().getBytes("UTF-8");
+        File file = new File(resultDir, "TEST-nexus_5.xml");
+        Files.write(file.toPath(), bytes);
+        SourceText text = new XmlText(ByteBuffer.wrap(bytes), 9, bytes.length - 10).inFile(file, file.lastModified());
+
+        assertEquals(expected.length(), text.length());
+        assertEquals(expected.toString(), text.toString());
+        assertEquals(expected.substring(100, 120), text.subSequence(100, 120).toString());
+    }
+
+    @Test
+    public void testChangedFileIsReported() throws IOException {
+        File file = new File(resultDir, "TEST-nexus_5.xml");
+        byte[] bytes = "<failure>trace</failure>".getBytes("UTF-8");
+        Files.write(file.toPath(), bytes);
+        SourceText text = new XmlText(ByteBuffer.wrap(bytes), 9, 14).inFile(file, file.lastModified());
+        assertEquals("trace", text.toString());
+
+        assertTrue(file.setLastModified(file.lastModified() - 10000));
+        try {
+            text.toString();
+            fail("expected an exception for the changed file");
+        } catch (GenerateReportException e) {
+            assertTrue(e.getMessage().contains("changed after it was loaded"));
+        }
+    }
+
+    private String renderClassPage(boolean lazyStackTraces) throws IOException {
+        TestReportExt report = new TestReportExt(resultDir, reportDir);
+        report.setStackTraceReferences(true);
+        report.setLazyStackTraces(lazyStackTraces);
+        report.generateReport();
+        return TestFiles.readPage(new File(reportDir, CLASS_NAME + ".html"));
+    }
+}
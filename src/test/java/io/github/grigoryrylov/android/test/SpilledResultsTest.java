@@ -0,0 +1,95 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SpilledResultsTest {
+    private File resultDir;
+    private File spillDir;
+
+    @Before
+    public void setUp() throws IOException {
+        resultDir = TestFiles.createTempDir("spilled-results");
+        spillDir = TestFiles.createTempDir("spilled-runs");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(resultDir);
+        TestFiles.delete(spillDir);
+    }
+
+    @Test
+    public void testSpilledReportIsTheSameAsLoadedOne() throws IOException {
+        writeResults("nexus_5");
+        writeResults("pixel_3");
+
+        Map<String, String> loadedPages = renderPages(false, 1);
+        Map<String, String> spilledPages = renderPages(true, 1);
+
+        TestFiles.assertSamePages(loadedPages, spilledPages);
+        assertTrue(spilledPages.get("com.example.ui.MainTest.html").contains("test3 [all devices]"));
+        assertEquals(0, spillDir.list().length);
+    }
+
+    @Test
+    public void testParallelSpilledReportIsTheSameAsLoadedOne() throws IOException {
+        // more files than are parsed ahead of the one being spilled
+        for (int i = 0; i < 20; i++) {
+            writeResults("device_" + i);
+        }
+
+        TestFiles.assertSamePages(renderPages(false, 1), renderPages(true, 4));
+        assertEquals(0, spillDir.list().length);
+    }
+
+    private void writeResults(String device) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8' ?>\n"
+                + "<testsuite name=\"com.example.LoginTest\" tests=\"4\">\n"
+                + "  <properties><property name=\"device\" value=\"" + device + "\" /></properties>\n");
+        for (int i = 0; i < 4; i++) {
+            String className = i % 2 == 0 ? "com.example.LoginTest" : "com.example.ui.MainTest";
+            xml.append("  <testcase name=\"test").append(i).append("\" classname=\"").append(className)
+                    .append("\" time=\"0.").append(i + 1).append("\">");
+            if (i == 3 || (i == 0 && device.equals("pixel_3"))) {
+                xml.append("<failure message=\"failed\">java.lang.AssertionError: test").append(i)
+                        .append(" on ").append(device).append("\n\tat Login.run(Login.java:3)\n</failure>");
+            }
+            if (i == 2) {
+                xml.append("<skipped />");
+            }
+            xml.append("</testcase>\n");
+        }
+        xml.append("  <system-out>output of ").append(device).append("</system-out>\n</testsuite>\n");
+        Files.write(new File(resultDir, "TEST-" + device + ".xml").toPath(), xml.toString().getBytes("UTF-8"));
+    }
+
+    private Map<String, String> renderPages(boolean spilled, int parallelism) throws IOException {
+        File reportDir = TestFiles.createTempDir("spilled-report");
+        try {
+            TestReportExt report = new TestReportExt(resultDir, reportDir);
+            report.setStackTraceReferences(true);
+            report.setParallelism(parallelism);
+            if (spilled) {
+                report.setSpillDir(spillDir);
+                report.setSpillRunSize(600);
+            }
+            report.generateReport();
+            return TestFiles.readPages(reportDir);
+        } finally {
+            TestFiles.delete(reportDir);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link StaxSuiteParser} builds the same model as {@link DomSuiteParser} from the
+ * corpus of {@link FastSuiteParserTest} and from the sample result files.
+ */
+@RunWith(JUnit4.class)
+public class StaxSuiteParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testCorpusMatchesDomParser() throws Exception {
+        for (String document : FastSuiteParserTest.CORPUS) {
+            byte[] bytes = document.getBytes(UTF_8);
+            assertEquals(document, FastSuiteParserTest.dump(new DomSuiteParser(), bytes),
+                    FastSuiteParserTest.dump(new StaxSuiteParser(), bytes));
+        }
+    }
+
+    @Test
+    public void testResultFilesMatchDomParser() throws Exception {
+        for (File file : new File("for_test").listFiles()) {
+            if (file.getName().endsWith(".xml")) {
+                byte[] bytes = FastSuiteParserTest.readFile(file);
+                assertEquals(file.getName(), FastSuiteParserTest.dump(new DomSuiteParser(), bytes),
+                        FastSuiteParserTest.dump(new StaxSuiteParser(), bytes));
+            }
+        }
+    }
+
+    /**
+     * Unlike the DOM parser, which applies the properties to every test case of the suite, the
+     * streaming parser applies them to the test cases that follow.
+     */
+    @Test
+    public void testPropertiesApplyToTheTestCasesAfterThem() throws Exception {
+        String document = "<testsuite name=\"a.B\">"
+                + "<testcase name=\"before\" classname=\"a.B\" time=\"1\"/>"
+                + "<properties><property name=\"device\" value=\"pixel\"/>"
+                + "<property name=\"project\" value=\"app\"/><property name=\"flavor\" value=\"main\"/>"
+                + "</properties>"
+                + "<testcase name=\"after\" classname=\"a.B\" time=\"2\"/>"
+                + "</testsuite>";
+        Map<String, Map<String, TestResultExt>> stax = parse(new StaxSuiteParser(), document);
+        assertEquals(Collections.singleton("before"), stax.get("").keySet());
+        assertEquals(":", variant(stax.get("").get("before")));
+        assertEquals(Collections.singleton("after"), stax.get("pixel").keySet());
+        assertEquals("app:main", variant(stax.get("pixel").get("after")));
+
+        Map<String, Map<String, TestResultExt>> dom = parse(new DomSuiteParser(), document);
+        assertEquals(Collections.singleton("pixel"), dom.keySet());
+        assertEquals(2, dom.get("pixel").size());
+    }
+
+    /**
+     * @return the test results of class a.B by device and test name.
+     */
+    private static Map<String, Map<String, TestResultExt>> parse(SuiteParser parser, String document)
+            throws Exception {
+        AllTestResultsExt model = new AllTestResultsExt();
+        parser.parse(new ByteArrayInputStream(document.getBytes(UTF_8)),
+                new ModelSuiteHandler(model, new HashMap<String, String>()));
+        return model.getPackages().iterator().next().getClasses().iterator().next().getTestResultsMap();
+    }
+
+    private static String variant(TestResultExt test) {
+        return test.getProject() + ":" + test.getFlavor();
+    }
+}
@@ -0,0 +1,136 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(JUnit4.class)
+public class SymbolTableTest {
+    @Test
+    public void testThreadsShareIdsAndInstances() throws Exception {
+        final SymbolTable symbols = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<int[]>> tasks = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                tasks.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        int[] ids = new int[1000];
+                        for (int j = 0; j < ids.length; j++) {
+                            ids[j] = symbols.getId(new String("symbol" + j));
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            int[] ids = tasks.get(0).get();
+            for (Future<int[]> task : tasks) {
+                int[] taskIds = task.get();
+                for (int j = 0; j < ids.length; j++) {
+                    assertEquals(ids[j], taskIds[j]);
+                    assertEquals("symbol" + j, symbols.getSymbol(ids[j]));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        String name = symbols.intern(new String("symbol7"));
+        assertSame(name, symbols.intern(new String("symbol7")));
+        assertNull(symbols.intern(null));
+        assertNull(symbols.getSymbol(symbols.getId(null)));
+    }
+
+    /**
+     * Records the same names in files of two devices, with a new string per name as a parser
+     * does, and checks that recordings sharing a table keep one instance of each name.
+     */
+    @Test
+    public void testRecordingsSharingTableKeepOneInstancePerName() {
+        SymbolTable symbols = new SymbolTable();
+        List<String> first = recordNames(new SuiteResults(symbols), "emulator-5554");
+        List<String> second = recordNames(new SuiteResults(symbols), "emulator-5556");
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            if (first.get(i).startsWith("emulator-")) {
+                continue;
+            }
+            assertSame(first.get(i), second.get(i));
+            assertSame(first.get(i), symbols.intern(copy(first.get(i))));
+        }
+
+        List<String> plain = recordNames(new SuiteResults(null), "emulator-5554");
+        assertEquals(first, plain);
+        assertNotSame(first.get(0), plain.get(0));
+    }
+
+    /**
+     * @return names the recording replays, in the order they were recorded.
+     */
+    private static List<String> recordNames(SuiteResults results, String device) {
+        results.onTestSuite(copy("com.example.app.AllTests"));
+        results.onProperties(copy(device), copy("app"), copy("debug"));
+        for (int c = 0; c < 3; c++) {
+            for (int t = 0; t < 2; t++) {
+                results.onTestCase(copy("com.example.app.ScreenTest" + c), copy("testShowsItem" + t), t);
+            }
+            results.onSkippedTestCase(copy("com.example.app.ScreenTest" + c), copy("testIgnored"));
+        }
+        final List<String> names = new ArrayList<>();
+        results.replay(new TestSuiteHandler() {
+            @Override
+            public void onTestSuite(String suiteName) {
+                names.add(suiteName);
+            }
+
+            @Override
+            public void onProperties(String deviceName, String projectName, String flavorName) {
+                names.add(deviceName);
+                names.add(projectName);
+                names.add(flavorName);
+            }
+
+            @Override
+            public void onTestCase(String className, String testName, long duration) {
+                names.add(className);
+                names.add(testName);
+            }
+
+            @Override
+            public void onFailure(String message, CharSequence stackTrace) {
+            }
+
+            @Override
+            public void onSkippedTestCase(String className, String testName) {
+                names.add(className);
+                names.add(testName);
+            }
+
+            @Override
+            public void onStandardOutput(CharSequence text) {
+            }
+
+            @Override
+            public void onStandardError(CharSequence text) {
+            }
+        });
+        return names;
+    }
+
+    private static String copy(String name) {
+        return new StringBuilder(name).toString();
+    }
+}
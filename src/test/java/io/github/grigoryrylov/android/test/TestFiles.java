@@ -0,0 +1,77 @@
+package io.github.grigoryrylov.android.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Temporary directories and report pages of tests that generate reports.
+ */
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    static File createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Deletes the file, or the directory with everything in it.
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+
+    /**
+     * @return the page without the time it was generated at.
+     */
+    static String readPage(File page) throws IOException {
+        return read(page).replaceAll(" at .*</p>", "</p>");
+    }
+
+    /**
+     * @return the pages directly in the report directory by file name, see {@link #readPage}.
+     */
+    static Map<String, String> readPages(File reportDir) throws IOException {
+        Map<String, String> pages = new TreeMap<>();
+        for (File file : reportDir.listFiles()) {
+            if (file.getName().endsWith(".html")) {
+                pages.put(file.getName(), readPage(file));
+            }
+        }
+        return pages;
+    }
+
+    static void assertSamePages(Map<String, String> expected, Map<String, String> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, String> page : expected.entrySet()) {
+            assertEquals(page.getKey(), page.getValue(), actual.get(page.getKey()));
+        }
+    }
+
+    /**
+     * @return number of occurrences of the part in the text, overlapping ones included.
+     */
+    static int count(String text, String part) {
+        int count = 0;
+        for (int index = text.indexOf(part); index != -1; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the rows of {@link TestResultStore} and that a model of row views renders like the
+ * model of objects it replaced.
+ */
+@RunWith(JUnit4.class)
+public class TestResultStoreTest {
+    /** Produced by the model before its results were stored in columns. */
+    private static final String EXPECTED_DUMP = ""
+            + "null tests=19 failures=7 ignored=2 duration=2111 status=failures\n"
+            + "  failed Class0#test0 on nexus_5\n"
+            + "  failed Class0#test0 on pixel_3\n"
+            + "  failed com.example.Class1#test0 on pixel_3\n"
+            + "  failed com.example.Class1#test2 on nexus_5\n"
+            + "  failed com.example.Class1#test2 on pixel_3\n"
+            + "  failed com.example.Class2#test1 on nexus_5\n"
+            + "  failed com.example.Class2#test1 on pixel_3\n"
+            + "  device nexus_5 tests=9 failures=3 ignored=1 duration=1053\n"
+            + "  device pixel_3 tests=10 failures=4 ignored=1 duration=1058\n"
+            + "  variant app:free tests=13 failures=5 ignored=2 duration=1349\n"
+            + "  variant app:paid tests=6 failures=2 ignored=0 duration=762\n"
+            + "  default-package tests=6 failures=2 ignored=0 duration=102 status=failures\n"
+            + "    failed Class0#test0 on nexus_5\n"
+            + "    failed Class0#test0 on pixel_3\n"
+            + "    device nexus_5 tests=3 failures=1 ignored=0 duration=51\n"
+            + "    device pixel_3 tests=3 failures=1 ignored=0 duration=51\n"
+            + "    variant app:free tests=4 failures=2 ignored=0 duration=48\n"
+            + "    variant app:paid tests=2 failures=0 ignored=0 duration=54\n"
+            + "    Class0 tests=6 failures=2 ignored=0 duration=102 status=failures\n"
+            + "      failed Class0#test0 on nexus_5\n"
+            + "      failed Class0#test0 on pixel_3\n"
+            + "      device nexus_5 tests=3 failures=1 ignored=0 duration=51\n"
+            + "      device pixel_3 tests=3 failures=1 ignored=0 duration=51\n"
+            + "      variant app:free tests=4 failures=2 ignored=0 duration=48\n"
+            + "      variant app:paid tests=2 failures=0 ignored=0 duration=54\n"
+            + "      stdout=\n"
+            + "      stderr=\n"
+            + "      nexus_5 test0 app:free failed duration=7\n"
+            + "        failure message=failed 0 screenshot=shots/nexus_5.png trace=java.lang.AssertionError: 0\n"
+            + "\tat A.b(A.java:1)\n"
+            + "      nexus_5 test1 app:free passed duration=17\n"
+            + "      nexus_5 test2 app:paid passed duration=27\n"
+            + "      pixel_3 test0 app:free failed duration=7\n"
+            + "        failure message=failed 0 screenshot=shots/pixel_3.png trace=java.lang.AssertionError: 0\n"
+            + "\tat A.b(A.java:1)\n"
+            + "      pixel_3 test1 app:free passed duration=17\n"
+            + "      pixel_3 test2 app:paid passed duration=27\n"
+            + "  com.example tests=13 failures=5 ignored=2 duration=2009 status=failures\n"
+            + "    failed com.example.Class1#test0 on pixel_3\n"
+            + "    failed com.example.Class1#test2 on nexus_5\n"
+            + "    failed com.example.Class1#test2 on pixel_3\n"
+            + "    failed com.example.Class2#test1 on nexus_5\n"
+            + "    failed com.example.Class2#test1 on pixel_3\n"
+            + "    device nexus_5 tests=6 failures=2 ignored=1 duration=1002\n"
+            + "    device pixel_3 tests=7 failures=3 ignored=1 duration=1007\n"
+            + "    variant app:free tests=9 failures=3 ignored=2 duration=1301\n"
+            + "    variant app:paid tests=4 failures=2 ignored=0 duration=708\n"
+            + "    com.example.Class1 tests=7 failures=3 ignored=2 duration=707 status=failures\n"
+            + "      failed com.example.Class1#test0 on pixel_3\n"
+            + "      failed com.example.Class1#test2 on nexus_5\n"
+            + "      failed com.example.Class1#test2 on pixel_3\n"
+            + "      device nexus_5 tests=3 failures=1 ignored=1 duration=351\n"
+            + "      device pixel_3 tests=4 failures=2 ignored=1 duration=356\n"
+            + "      variant app:free tests=5 failures=1 ignored=2 duration=453\n"
+            + "      variant app:paid tests=2 failures=2 ignored=0 duration=254\n"
+            + "      stdout=\n"
+            + "      stderr=\n"
+            + "      nexus_5 test0 app:free passed duration=107\n"
+            + "      nexus_5 test1 app:free ignored duration=117\n"
+            + "      nexus_5 test2 app:paid failed duration=127\n"
+            + "        failure message=failed 2 screenshot= trace=java.lang.AssertionError: 2\n"
+            + "\tat A.b(A.java:1)\n"
+            + "      pixel_3 test0 app:free failed duration=5\n"
+            + "        failure message=failed again screenshot= trace=java.lang.AssertionError: again\n"
+            + "      pixel_3 test1 app:free ignored duration=117\n"
+            + "      pixel_3 test2 app:paid failed duration=127\n"
+            + "        failure message=failed 2 screenshot= trace=java.lang.AssertionError: 2\n"
+            + "\tat A.b(A.java:1)\n"
+            + "    com.example.Class2 tests=6 failures=2 ignored=0 duration=1302 status=failures\n"
+            + "      failed com.example.Class2#test1 on nexus_5\n"
+            + "      failed com.example.Class2#test1 on pixel_3\n"
+            + "      device nexus_5 tests=3 failures=1 ignored=0 duration=651\n"
+            + "      device pixel_3 tests=3 failures=1 ignored=0 duration=651\n"
+            + "      variant app:free tests=4 failures=2 ignored=0 duration=848\n"
+            + "      variant app:paid tests=2 failures=0 ignored=0 duration=454\n"
+            + "      stdout=\n"
+            + "      stderr=\n"
+            + "      nexus_5 test0 app:free passed duration=207\n"
+            + "      nexus_5 test1 app:free failed duration=217\n"
+            + "        failure message=failed 1 screenshot= trace=java.lang.AssertionError: 1\n"
+            + "\tat A.b(A.java:1)\n"
+            + "      nexus_5 test2 app:paid passed duration=227\n"
+            + "      pixel_3 test0 app:free passed duration=207\n"
+            + "      pixel_3 test1 app:free failed duration=217\n"
+            + "        failure message=failed 1 screenshot= trace=java.lang.AssertionError: 1\n"
+            + "\tat A.b(A.java:1)\n"
+            + "      pixel_3 test2 app:paid passed duration=227\n";
+
+    @Test
+    public void testRowsKeepTheirColumns() {
+        TestResultStore store = new TestResultStore(new SymbolTable(), new FailureTextStore(new TextArena()));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, store.add("test" + i, i * 100, i % 2 == 0 ? "nexus_5" : "pixel_3", "app",
+                    i < 5 ? "free" : "paid"));
+        }
+        assertEquals(10, store.size());
+        assertEquals("test7", store.getName(7));
+        assertEquals(700, store.getDuration(7));
+        assertEquals("pixel_3", store.getDevice(7));
+        assertEquals("app", store.getProject(7));
+        assertEquals("paid", store.getFlavor(7));
+        assertEquals("free", store.getFlavor(4));
+
+        assertTrue(store.setIgnored(3));
+        assertFalse(store.setIgnored(3));
+        assertTrue(store.isIgnored(3));
+        assertFalse(store.isIgnored(4));
+    }
+
+    @Test
+    public void testFailuresAreChainedPerRow() {
+        TestResultStore store = new TestResultStore(new SymbolTable(), new FailureTextStore(new TextArena()));
+        for (int i = 0; i < 3; i++) {
+            store.add("test" + i, 0, "nexus_5", "app", "main");
+        }
+        assertTrue(store.addFailure(2, failure(store, "a")));
+        assertTrue(store.addFailure(0, failure(store, "b")));
+        assertFalse(store.addFailure(2, failure(store, "c")));
+        assertFalse(store.addFailure(0, failure(store, "d")));
+        assertFalse(store.addFailure(2, failure(store, "e")));
+
+        assertEquals(Arrays.asList("b", "d"), messages(store, 0));
+        assertEquals(Collections.<String>emptyList(), messages(store, 1));
+        assertEquals(Arrays.asList("a", "c", "e"), messages(store, 2));
+        assertFalse(store.hasFailures(1));
+        assertTrue(store.hasFailures(2));
+    }
+
+    @Test
+    public void testModelDumpIsUnchanged() {
+        AllTestResultsExt model = new AllTestResultsExt();
+        String[] devices = {"pixel_3", "nexus_5"};
+        for (String device : devices) {
+            for (int c = 0; c < 3; c++) {
+                String className = (c == 0 ? "" : "com.example.") + "Class" + c;
+                for (int t = 0; t < 3; t++) {
+                    TestResultExt test = model.addTest(className, "test" + t, c * 100 + t * 10 + device.length(),
+                            device, "app", t == 2 ? "paid" : "free");
+                    if ((c + t) % 3 == 0) {
+                        test.addFailure("failed " + t, "java.lang.AssertionError: " + t + "\n\tat A.b(A.java:1)",
+                                device, "app", test.getFlavor(), t == 0 ? "shots/" + device + ".png" : "");
+                    }
+                    if (c == 1 && t == 1) {
+                        test.ignored();
+                    }
+                }
+            }
+        }
+        model.addTest("com.example.Class1", "test0", 5, "pixel_3", "app", "free")
+                .addFailure("failed again", "java.lang.AssertionError: again", "pixel_3", "app", "free", "");
+
+        assertEquals(EXPECTED_DUMP, ModelDumper.dump(model));
+    }
+
+    private static TestResultExt.TestFailure failure(TestResultStore store, String message) {
+        return new TestResultExt.TestFailure(message, store.getFailureTexts(), "trace", null, "");
+    }
+
+    private static List<String> messages(TestResultStore store, int row) {
+        List<String> messages = new ArrayList<>();
+        for (TestResultExt.TestFailure failure : store.getFailures(row)) {
+            messages.add(failure.getMessage());
+        }
+        return messages;
+    }
+}
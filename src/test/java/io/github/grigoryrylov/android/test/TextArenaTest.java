@@ -0,0 +1,76 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class TextArenaTest {
+
+    @Test
+    public void testTextsSpanningBuffersAreDecodedUnchanged() throws Exception {
+        TextArena arena = new TextArena();
+        List<String> texts = new ArrayList<>();
+        List<TextArena.Text> handles = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            // ASCII, two and three byte characters and surrogate pairs crossing buffer boundaries
+            text.append("line ").append(i).append(" \u00e9\u4e2d\ud83d\ude00\n");
+            texts.add(text.toString());
+            handles.add(arena.add(text));
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            StringWriter out = new StringWriter();
+            handles.get(i).writeTo(out);
+            assertEquals(texts.get(i), out.toString());
+            assertTrue(handles.get(i).contentEquals(texts.get(i)));
+            assertFalse(handles.get(i).contentEquals(texts.get(i) + "x"));
+        }
+        assertTrue(arena.add("").isEmpty());
+        assertEquals("", arena.add("").toString());
+    }
+
+    @Test
+    public void testXmlTextsSpanningBuffersAreDecodedUnchanged() throws Exception {
+        TextArena arena = new TextArena();
+        List<String> texts = new ArrayList<>();
+        List<TextArena.Text> handles = new ArrayList<>();
+        StringBuilder xml = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            // bytes copied as they are, lines decoded and encoded again, and CDATA sections
+            xml.append("line ").append(i).append(" \u00e9\u4e2d\ud83d\ude00\n")
+                    .append(i % 3 == 0 ? "&lt;&#x4e2d;&gt;\r\n" : "")
+                    .append(i % 5 == 0 ? "<![CDATA[<b>\u00e9</b>]]>" : "");
+            byte[] bytes = xml.toString().getBytes("UTF-8");
+            XmlText text = new XmlText(ByteBuffer.wrap(bytes), 0, bytes.length);
+            texts.add(text.toString());
+            handles.add(arena.add(text));
+            // shifts where the next text starts in a buffer
+            arena.add("\u00e9");
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i), handles.get(i).toString());
+        }
+        assertTrue(arena.add(new XmlText(ByteBuffer.allocate(0), 0, 0)).isEmpty());
+    }
+
+    @Test
+    public void testReleasedArenaKeepsTexts() {
+        TextArena arena = new TextArena();
+        TextArena.Text before = arena.add("before release");
+        arena.release();
+        TextArena.Text after = arena.add("after release");
+        arena.release();
+        assertEquals("before release", before.toString());
+        assertEquals("after release", after.toString());
+    }
+}
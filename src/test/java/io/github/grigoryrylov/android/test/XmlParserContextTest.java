@@ -0,0 +1,46 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.xml.parsers.DocumentBuilder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that {@link XmlParserContext} hands out parsers one user at a time and reuses them on
+ * other threads once they are returned.
+ */
+@RunWith(JUnit4.class)
+public class XmlParserContextTest {
+
+    @Test
+    public void testReturnedParsersAreReusedByOtherThreads() throws Exception {
+        final XmlParserContext context = new XmlParserContext();
+        DocumentBuilder first = context.acquireDocumentBuilder();
+        DocumentBuilder second = context.acquireDocumentBuilder();
+        assertNotSame(first, second);
+        context.releaseDocumentBuilder(first);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            DocumentBuilder reused = executor.submit(new Callable<DocumentBuilder>() {
+                @Override
+                public DocumentBuilder call() {
+                    DocumentBuilder documentBuilder = context.acquireDocumentBuilder();
+                    context.releaseDocumentBuilder(documentBuilder);
+                    return documentBuilder;
+                }
+            }).get();
+            assertSame(first, reused);
+        } finally {
+            executor.shutdownNow();
+        }
+        context.releaseDocumentBuilder(second);
+    }
+}
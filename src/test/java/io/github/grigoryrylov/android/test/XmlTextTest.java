@@ -0,0 +1,40 @@
+package io.github.grigoryrylov.android.test;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(JUnit4.class)
+public class XmlTextTest {
+
+    @Test
+    public void testChunksDecodeLikeWholeText() throws Exception {
+        StringBuilder xml = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            // line lengths vary so chunks end at every kind of character or reference
+            String padding = "........".substring(i % 8);
+            xml.append(padding).append("\u00e9\u4e2d\ud83d\ude00 &lt;&#x4e2d;&amp;\r\n");
+            expected.append(padding).append("\u00e9\u4e2d\ud83d\ude00 <\u4e2d&\n");
+            if (i % 500 == 0) {
+                xml.append("<![CDATA[&amp;\r\n]]>");
+                expected.append("&amp;\n");
+            }
+        }
+        byte[] bytes = xml.toString().getBytes("UTF-8");
+        XmlText text = new XmlText(ByteBuffer.wrap(bytes), 0, bytes.length);
+
+        StringWriter chunks = new StringWriter();
+        text.writeTo(chunks);
+        assertEquals(expected.toString(), chunks.toString());
+        assertEquals(expected.toString(), text.toString());
+        assertEquals(expected.length(), text.length());
+        assertEquals(expected.charAt(expected.length() - 2), text.charAt(expected.length() - 2));
+        assertEquals(expected.substring(10, 20), text.subSequence(10, 20).toString());
+    }
+}